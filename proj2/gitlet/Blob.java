@@ -1,11 +1,103 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+/** The contents of one version of a file.  A blob is stored as the zlib
+ *  (Deflate) compression of its contents and is always streamed, so
+ *  neither saving nor checking out a blob holds the whole file in memory.
+ *  Blobs written by older versions of gitlet, which are serialized Blob
+ *  objects, are still readable, and blobs that repack stored as deltas
+ *  are rebuilt transparently.
+ *
+ *  Files of at least CHUNK_THRESHOLD bytes are instead split by Chunker
+ *  into content-defined chunks, each stored once as a compressed object
+ *  of type CHUNK_TYPE, and the blob itself is a Manifest listing them.
+ *  Either way the id of a blob is the SHA-1 of its contents. */
 public class Blob implements Serializable {
-    private byte[] content;
+    private static final long serialVersionUID = -8597034050079608068L;
+
+    /** The object type under which blobs are stored. */
+    static final String TYPE = "blob";
+
+    /** Size of the buffers used to stream blob contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** The object type under which the chunks of chunked blobs are
+     *  stored. */
+    static final String CHUNK_TYPE = "chunk";
+
+    /** Files at least this large are stored as chunks. */
+    static final long CHUNK_THRESHOLD = 1 << 20;
+
+    /** The first two bytes of a serialized Java object. */
+    private static final int SERIAL_MAGIC = 0xaced;
+    /** The first two bytes of a Manifest (and of any Codec object). */
+    private static final int MANIFEST_MAGIC = ('g' << 8) | 'l';
+
+    /** The list of chunks of a chunked blob. */
+    static class Manifest {
+        /** Total size of the contents. */
+        long size;
+        final List<String> chunks = new ArrayList<>();
+        final List<Integer> lengths = new ArrayList<>();
+
+        void add(String chunkId, int length) {
+            chunks.add(chunkId);
+            lengths.add(length);
+            size += length;
+        }
+
+        byte[] encode() {
+            Codec.Writer out = new Codec.Writer('m', 1);
+            out.writeLong(chunks.size());
+            for (int i = 0; i < chunks.size(); i += 1) {
+                out.writeId(chunks.get(i)).writeLong(lengths.get(i));
+            }
+            return out.toByteArray();
+        }
+
+        static Manifest decode(byte[] bytes) {
+            Codec.Reader in = new Codec.Reader(bytes, 'm');
+            Manifest manifest = new Manifest();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String chunkId = in.readId();
+                manifest.add(chunkId, in.readInt());
+            }
+            return manifest;
+        }
+    }
+
+    /** The contents of this blob, if they are held in memory. */
+    private volatile byte[] content;
     private String id;
+    /** The file this blob was read from, if it is not held in memory. */
+    private transient File source;
+    /** The object store this blob was loaded from. */
+    private transient ObjectStore store;
+
+    /** Size in memory of a blob whose contents are not loaded, for the
+     *  object cache. */
+    private static final long HANDLE_BYTES = 100;
 
     public Blob(byte[] content) {
         this.content = content;
@@ -13,31 +105,319 @@ public class Blob implements Serializable {
     }
 
     public Blob(File file) {
-        this(Utils.readContents(file));
+        this.source = file;
+        this.id = blobID(file);
+    }
+
+    /** A blob of FILE, whose id ID is already known. */
+    Blob(File file, String id) {
+        this.source = file;
+        this.id = id;
+    }
+
+    private Blob(ObjectStore store, String id) {
+        this.store = store;
+        this.id = id;
     }
 
+    /** Returns the whole contents of this blob.  Meant for small files;
+     *  use open or writeTo otherwise.  The contents of a stored blob are
+     *  kept, and counted in the object cache, for later calls. */
     public byte[] getContent() {
-        return content;
+        if (content != null) {
+            return content;
+        }
+        try (InputStream in = open()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            byte[] bytes = out.toByteArray();
+            if (store != null) {
+                keep(bytes);
+            }
+            return bytes;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Holds on to CONTENTS, the contents of this stored blob, while the
+     *  object cache does. */
+    private void keep(byte[] contents) {
+        content = contents;
+        store.cache().resize(TYPE, id, this, contents.length + HANDLE_BYTES);
     }
 
     public String getId() {
         return id;
     }
 
+    /** Returns a stream of the contents of this blob. */
+    public InputStream open() throws IOException {
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        if (source != null) {
+            return new BufferedInputStream(new FileInputStream(source), BUFFER_SIZE);
+        }
+        if (store.deltaBase(TYPE, id) != null) {
+            return new ByteArrayInputStream(rebuild(store, id));
+        }
+        InputStream raw = store.open(TYPE, id);
+        if (raw == null) {
+            throw new IllegalArgumentException("no blob " + id);
+        }
+        BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+        in.mark(2);
+        int magic = (in.read() << 8) | in.read();
+        in.reset();
+        if (magic == SERIAL_MAGIC) {
+            byte[] legacy;
+            try (in) {
+                legacy = Utils.deserialize(in.readAllBytes(), Blob.class).content;
+            }
+            return new ByteArrayInputStream(legacy);
+        }
+        if (magic == MANIFEST_MAGIC) {
+            Manifest manifest;
+            try (in) {
+                manifest = Manifest.decode(in.readAllBytes());
+            }
+            return openChunks(store, manifest);
+        }
+        return inflate(in);
+    }
+
+    /** Returns a stream of the concatenated chunks of MANIFEST in STORE,
+     *  which opens each chunk only when the previous one is used up. */
+    private static InputStream openChunks(ObjectStore store, Manifest manifest) {
+        Iterator<String> chunks = manifest.chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                String chunkId = chunks.next();
+                try {
+                    InputStream raw = store.open(CHUNK_TYPE, chunkId);
+                    if (raw == null) {
+                        throw new IllegalArgumentException("no chunk " + chunkId);
+                    }
+                    return inflate(new BufferedInputStream(raw, BUFFER_SIZE));
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        });
+    }
+
+    private static InputStream inflate(InputStream in) {
+        return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+
+    /** Returns the manifest of blob ID of STORE, or null if it is not
+     *  stored as chunks. */
+    static Manifest manifest(ObjectStore store, String id) {
+        if (store.deltaBase(TYPE, id) != null) {
+            return null;
+        }
+        try (InputStream raw = store.open(TYPE, id)) {
+            if (raw == null) {
+                return null;
+            }
+            BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+            in.mark(2);
+            int magic = (in.read() << 8) | in.read();
+            in.reset();
+            return magic == MANIFEST_MAGIC ? Manifest.decode(in.readAllBytes()) : null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies blob ID, and its chunks if it has any, from FROM into TO
+     *  unless TO already has it. */
+    static void copy(ObjectStore from, ObjectStore to, String id) {
+        if (to.contains(TYPE, id)) {
+            return;
+        }
+        Manifest manifest = manifest(from, id);
+        if (manifest != null) {
+            for (String chunkId : manifest.chunks) {
+                from.copyTo(to, CHUNK_TYPE, chunkId);
+            }
+        }
+        from.copyTo(to, TYPE, id);
+    }
+
+    /** Returns true iff this blob is stored as a serialized Blob, as
+     *  older versions of gitlet wrote them. */
+    boolean isSerialized() {
+        if (store == null || store.deltaBase(TYPE, id) != null) {
+            return false;
+        }
+        try (InputStream raw = store.open(TYPE, id)) {
+            return ((raw.read() << 8) | raw.read()) == SERIAL_MAGIC;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of blob ID of STORE, rebuilding it and its
+     *  bases from their deltas as needed. */
+    private static byte[] rebuild(ObjectStore store, String id) {
+        Blob blob = load(store, id);
+        if (blob.content != null) {
+            return blob.content;
+        }
+        String base = store.deltaBase(TYPE, id);
+        if (base == null) {
+            return blob.getContent();
+        }
+        blob.keep(Delta.apply(rebuild(store, base), store.readDelta(TYPE, id)));
+        return blob.content;
+    }
+
+    /** Writes the contents of this blob to FILE, inflating them on the
+     *  way. */
+    public void writeTo(File file) {
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        try (InputStream in = open();
+             OutputStream out = Files.newOutputStream(file.toPath())) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     public void save() {
-        File writeTo = Utils.join(Repository.OBJECTS_DIR, id);
-        if (writeTo.exists()) {
+        ObjectStore store = ObjectStore.local();
+        if (store.contains(TYPE, id)) {
             return;
         }
-        Utils.writeObject(Utils.join(Repository.BLOB_DIR, id), this);
+        if (source != null) {
+            write(store, source);
+        } else {
+            saveTo(store);
+        }
+    }
+
+    /** Writes this blob to TARGET as a loose object, replacing any copy
+     *  TARGET already has. */
+    void saveTo(ObjectStore target) {
+        ObjectStore.NewObject object = target.create();
+        Deflater deflater = new Deflater();
+        try (InputStream in = open()) {
+            OutputStream out = new DeflaterOutputStream(object, deflater, BUFFER_SIZE);
+            in.transferTo(out);
+            out.close();
+            object.install(TYPE, id);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+            object.discard();
+        }
+    }
+
+    /** Stores the contents of FILE in STORE, unless it already has them,
+     *  and returns their blob id.  FILE is read once, through a
+     *  fixed-size buffer that is hashed and compressed in the same pass,
+     *  so this runs in constant memory whatever the size of FILE. */
+    static String write(ObjectStore store, File file) {
+        if (file.length() >= CHUNK_THRESHOLD) {
+            return writeChunked(store, file);
+        }
+        ObjectStore.NewObject object = store.create();
+        Deflater deflater = new Deflater();
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            OutputStream out = new DeflaterOutputStream(object, deflater, BUFFER_SIZE);
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                out.write(buf, 0, n);
+            }
+            out.close();
+            String id = Utils.toHex(md.digest());
+            if (!store.contains(TYPE, id)) {
+                object.install(TYPE, id);
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } finally {
+            deflater.end();
+            object.discard();
+        }
+    }
+
+    /** Stores CONTENTS in STORE, unless it already has them, and returns
+     *  their blob id. */
+    static String write(ObjectStore store, byte[] contents) {
+        String id = Utils.sha1(contents);
+        if (!store.contains(TYPE, id)) {
+            store.write(TYPE, id, ObjectStore.deflate(contents));
+        }
+        return id;
+    }
+
+    /** Stores the contents of FILE in STORE as chunks and a Manifest,
+     *  reading FILE once, and returns their blob id.  Only one chunk is
+     *  held in memory at a time, and chunks STORE already has, from this
+     *  or any other file, are not written again. */
+    private static String writeChunked(ObjectStore store, File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            Manifest manifest = new Manifest();
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                md.update(chunk);
+                String chunkId = Utils.sha1(chunk);
+                store.write(CHUNK_TYPE, chunkId, ObjectStore.deflate(chunk));
+                manifest.add(chunkId, chunk.length);
+            }
+            String id = Utils.toHex(md.digest());
+            store.write(TYPE, id, manifest.encode());
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
     }
 
     public static Blob load(String id) {
-        return Utils.readObject(Utils.join(Repository.BLOB_DIR, id), Blob.class);
+        return load(ObjectStore.local(), id);
+    }
+
+    /** Loads blob ID from STORE, which may belong to another repository. */
+    public static Blob load(ObjectStore store, String id) {
+        Blob blob = (Blob) store.cache().get(TYPE, id);
+        if (blob == null) {
+            if (!store.contains(TYPE, id)) {
+                throw new IllegalArgumentException("no blob " + id);
+            }
+            blob = new Blob(store, id);
+            store.cache().put(TYPE, id, blob, HANDLE_BYTES);
+        }
+        return blob;
     }
 
     public static String blobID(File file) {
-        return Utils.sha1(Utils.readContents(file));
+        return Utils.sha1(file);
     }
 
     @Override
@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Writes blobs into the working directory on a bounded pool of threads,
+ *  so that inflating one file overlaps with the disk writes of others.
+ *
+ *  Failures are deterministic: every file is attempted, and if any fail,
+ *  the error of the first failing file in path order is thrown, whatever
+ *  order the threads happened to run in. */
+class Checkout {
+
+    /** Upper bound on the number of writer threads. */
+    static final int MAX_THREADS = 8;
+
+    private final ObjectStore store;
+    private long bytes;
+    private int files;
+
+    Checkout(ObjectStore store) {
+        this.store = store;
+    }
+
+    /** Writes FILES, a map from paths to blob ids, under the current
+     *  working directory and records each in INDEX. */
+    void write(Map<String, String> files, Index index) {
+        long start = System.nanoTime();
+        List<String> paths = new ArrayList<>(files.keySet());
+        List<Future<Long>> results = new ArrayList<>(paths.size());
+        int threads = Math.max(1, Math.min(MAX_THREADS,
+                Math.min(Runtime.getRuntime().availableProcessors() * 2, paths.size())));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String path : paths) {
+                String blobId = files.get(path);
+                results.add(pool.submit(() -> writeFile(path, blobId)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        RuntimeException failure = null;
+        for (int i = 0; i < paths.size(); i += 1) {
+            try {
+                bytes += results.get(i).get();
+                this.files += 1;
+                index.update(paths.get(i), files.get(paths.get(i)));
+            } catch (ExecutionException excp) {
+                if (failure == null) {
+                    failure = excp.getCause() instanceof RuntimeException
+                            ? (RuntimeException) excp.getCause()
+                            : new IllegalArgumentException(excp.getCause().getMessage());
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException("checkout interrupted");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (Main.debug) {
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            System.err.printf("checkout: %d files, %d bytes, %d threads, %.0f files/s, %.1f MB/s%n",
+                    this.files, bytes, threads, this.files / seconds, bytes / seconds / (1 << 20));
+        }
+    }
+
+    /** Writes blob BLOBID to working file PATH, creating its directories,
+     *  and returns the number of bytes written. */
+    private long writeFile(String path, String blobId) throws IOException {
+        File file = Utils.join(Repository.CWD, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Blob.load(store, blobId).writeTo(file);
+        return file.length();
+    }
+}
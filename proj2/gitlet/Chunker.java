@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Splits a stream into content-defined chunks, as FastCDC does.  A Gear
+ *  rolling hash runs over the bytes of each chunk and a chunk ends where
+ *  the hash has its top bits all zero, so boundaries depend only on the
+ *  nearby content: an edit in the middle of a large file changes the
+ *  chunks around it, but every chunk before and after it comes out the
+ *  same and is stored once.
+ *
+ *  Chunks are between MIN_SIZE and MAX_SIZE bytes.  Below AVG_SIZE the
+ *  boundary test uses a stricter mask, above it a looser one
+ *  ("normalized chunking"), which keeps chunk sizes close to AVG_SIZE. */
+class Chunker {
+
+    static final int MIN_SIZE = 16 << 10;
+    static final int AVG_SIZE = 64 << 10;
+    static final int MAX_SIZE = 256 << 10;
+
+    /** Boundary masks: two bits more and two bits fewer than the 16 of
+     *  AVG_SIZE, taken from the high end of the hash, which depends on
+     *  the last 64 bytes. */
+    private static final long MASK_S = -1L << (64 - 18);
+    private static final long MASK_L = -1L << (64 - 14);
+
+    /** Random values of the Gear hash, one per byte value.  They come from
+     *  a fixed seed, since chunk boundaries must never change. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long x = 0x676974_6c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            x += 0x9e3779b97f4a7c15L;
+            long z = x;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buf = new byte[MAX_SIZE];
+    private int start;
+    private int end;
+    private boolean eof;
+
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Returns the next chunk of the stream, or null at its end. */
+    byte[] next() throws IOException {
+        System.arraycopy(buf, start, buf, 0, end - start);
+        end -= start;
+        start = 0;
+        while (!eof && end < buf.length) {
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                eof = true;
+            } else {
+                end += n;
+            }
+        }
+        if (end == 0) {
+            return null;
+        }
+        int length = cut(buf, end);
+        start = length;
+        return Arrays.copyOf(buf, length);
+    }
+
+    /** Returns the length of the chunk at the start of the first N bytes
+     *  of DATA. */
+    static int cut(byte[] data, int n) {
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        int normal = Math.min(AVG_SIZE, n);
+        int max = Math.min(MAX_SIZE, n);
+        long h = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            h = (h << 1) + GEAR[data[i] & 0xff];
+            if ((h & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < max; i += 1) {
+            h = (h << 1) + GEAR[data[i] & 0xff];
+            if ((h & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The compact binary encoding of gitlet's metadata objects, used in place
+ *  of Java serialization.  An encoded object is
+ *      'g' 'l' KIND VERSION
+ *      COUNT (STRING-LENGTH STRING-BYTES)...
+ *      BODY
+ *  where all integers are unsigned LEB128 varints and the string table
+ *  holds every distinct string of the object once; the body refers to
+ *  strings by their index in the table.  Paths are stored as lists of
+ *  their components, so directory names are shared too, and SHA-1 ids
+ *  are stored as 20 raw bytes instead of 40 hex digits. */
+class Codec {
+
+    private static final int MAGIC_0 = 'g';
+    private static final int MAGIC_1 = 'l';
+
+    /** Id tags: a plain id, an id marked removed with "-", or a string
+     *  that is not an id at all. */
+    private static final int ID = 0;
+    private static final int REMOVED_ID = 1;
+    private static final int NOT_ID = 2;
+
+    /** Returns true iff BYTES is an object in this encoding (as opposed
+     *  to, say, a serialized Java object). */
+    static boolean isEncoded(byte[] bytes) {
+        return bytes.length >= 4 && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads a varint from DATA at POS[0], advancing POS[0] past it. */
+    static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[pos[0]++];
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    private static boolean isId(String s, int start) {
+        if (s.length() - start != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Builds one encoded object. */
+    static class Writer {
+        private final int kind;
+        private final int version;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+
+        Writer(char kind, int version) {
+            this.kind = kind;
+            this.version = version;
+        }
+
+        Writer writeLong(long value) {
+            writeVarint(body, value);
+            return this;
+        }
+
+        Writer writeString(String s) {
+            Integer ref = strings.get(s);
+            if (ref == null) {
+                ref = table.size();
+                strings.put(s, ref);
+                table.add(s);
+            }
+            writeVarint(body, ref);
+            return this;
+        }
+
+        /** Writes ID, which is normally a SHA-1 id, possibly prefixed by
+         *  "-" to mark a removal, but may be any string. */
+        Writer writeId(String id) {
+            if (isId(id, 0)) {
+                body.write(ID);
+                body.write(Utils.fromHex(id), 0, Utils.UID_LENGTH / 2);
+            } else if (id.startsWith("-") && isId(id, 1)) {
+                body.write(REMOVED_ID);
+                body.write(Utils.fromHex(id.substring(1)), 0, Utils.UID_LENGTH / 2);
+            } else {
+                body.write(NOT_ID);
+                writeString(id);
+            }
+            return this;
+        }
+
+        /** Writes the slash-separated PATH as a list of components. */
+        Writer writePath(String path) {
+            String[] parts = path.split("/", -1);
+            writeVarint(body, parts.length);
+            for (String part : parts) {
+                writeString(part);
+            }
+            return this;
+        }
+
+        byte[] toByteArray() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + 64);
+            out.write(MAGIC_0);
+            out.write(MAGIC_1);
+            out.write(kind);
+            out.write(version);
+            writeVarint(out, table.size());
+            for (String s : table) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+            out.write(body.toByteArray(), 0, body.size());
+            return out.toByteArray();
+        }
+    }
+
+    /** Reads one encoded object. */
+    static class Reader {
+        private final byte[] data;
+        private final int[] pos = { 4 };
+        private final String[] table;
+        private final int version;
+
+        /** A reader of DATA, which must be an object of KIND. */
+        Reader(byte[] data, char kind) {
+            if (!isEncoded(data) || data[2] != kind) {
+                throw new IllegalArgumentException("not an encoded object of kind " + kind);
+            }
+            this.data = data;
+            this.version = data[3];
+            table = new String[(int) readVarint(data, pos)];
+            for (int i = 0; i < table.length; i += 1) {
+                int length = (int) readVarint(data, pos);
+                table[i] = new String(data, pos[0], length, StandardCharsets.UTF_8);
+                pos[0] += length;
+            }
+        }
+
+        int version() {
+            return version;
+        }
+
+        boolean atEnd() {
+            return pos[0] >= data.length;
+        }
+
+        long readLong() {
+            return readVarint(data, pos);
+        }
+
+        int readInt() {
+            return (int) readVarint(data, pos);
+        }
+
+        String readString() {
+            return table[readInt()];
+        }
+
+        String readId() {
+            int tag = data[pos[0]++];
+            if (tag == NOT_ID) {
+                return readString();
+            }
+            byte[] raw = new byte[Utils.UID_LENGTH / 2];
+            System.arraycopy(data, pos[0], raw, 0, raw.length);
+            pos[0] += raw.length;
+            return tag == REMOVED_ID ? "-" + Utils.toHex(raw) : Utils.toHex(raw);
+        }
+
+        String readPath() {
+            int n = readInt();
+            StringBuilder path = new StringBuilder();
+            for (int i = 0; i < n; i += 1) {
+                if (i > 0) {
+                    path.append('/');
+                }
+                path.append(readString());
+            }
+            return path.toString();
+        }
+    }
+}
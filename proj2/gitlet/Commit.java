@@ -1,18 +1,21 @@
 package gitlet;
 
 
-import java.io.File;
 import java.io.Serializable;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /** Represents a gitlet commit object.
  *
  *  @author Cheuring
  */
 public class Commit implements Serializable {
+    private static final long serialVersionUID = 2925154828173916904L;
+
+    /** The object type under which commits are stored. */
+    static final String TYPE = "commit";
+
     /**
      *
      * List all instance variables of the Commit class here with a useful
@@ -21,6 +24,11 @@ public class Commit implements Serializable {
      */
     private Date timestamp;
     private List<String> parents;
+    /** The id of the root Tree of this Commit's snapshot. */
+    private String tree;
+    /** The snapshot of a commit made by an older gitlet, which stored a flat
+     *  map from file names to blob ids (removed files marked by "-") instead
+     *  of a tree; null for every other commit. */
     private TreeMap<String, String> blobs;
 
     /** The message of this Commit. */
@@ -31,32 +39,52 @@ public class Commit implements Serializable {
         return "Commit{" +
                 "timestamp=" + timestamp +
                 ", parents=" + parents +
-                ", blobs=" + blobs +
+                ", tree=" + tree +
                 ", message='" + message + '\'' +
                 '}';
     }
 
+    /** Rough size in memory of one file of a snapshot, or of a commit's
+     *  fixed fields, for the object cache. */
+    private static final long ENTRY_BYTES = 200;
+
+    /** The id of this Commit, computed on first use. */
+    private transient String id;
+    /** The object store this Commit was loaded from. */
+    private transient ObjectStore store;
+    /** The root tree built for a commit made by an older gitlet. */
+    private transient String builtTree;
+    /** The files of this Commit, computed on first use. */
+    private transient TreeMap<String, String> files;
+
+    private Commit() {
+    }
+
     public Commit(String message, TreeMap<String, String> blobs, List<String> parents) {
         this(new Date(), message, blobs, parents);
     }
 
+    /** A commit whose snapshot is that of its first parent with the staged
+     *  changes BLOBS applied (a map from paths to blob ids, or to ids
+     *  prefixed with "-" for removals).  Only the trees on the paths of the
+     *  changed files are written; the rest are shared with the parent. */
     public Commit(Date timestamp, String message, TreeMap<String, String> blobs, List<String> parents) {
         this.timestamp = timestamp;
         this.message = message;
         this.parents = parents;
-        if (parents.isEmpty()) {
-            this.blobs = blobs;
-        } else {
-            Commit parent = load(parents.get(0));
-            this.blobs = parent.blobs;
-            this.blobs.putAll(blobs);
-        }
+        this.store = ObjectStore.local();
+        String parentTree = parents.isEmpty() ? null : load(parents.get(0)).getTree();
+        this.tree = Tree.apply(store, parentTree, blobs);
     }
 
     public String getTimestamp() {
         return timestampConverter(timestamp);
     }
 
+    Date getDate() {
+        return timestamp;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -74,18 +102,74 @@ public class Commit implements Serializable {
         if (commitId.length() < Utils.UID_LENGTH) {
             commitId = getFullCommitId(commitId);
         }
-        File commitFile = Utils.join(Repository.COMMIT_DIR, commitId);
-        if (!commitFile.exists()) {
+        return load(ObjectStore.local(), commitId);
+    }
+
+    /** Loads the commit with the full id COMMITID from STORE, which may
+     *  belong to another repository. */
+    public static Commit load(ObjectStore store, String commitId) {
+        Commit commit = (Commit) store.cache().get(TYPE, commitId);
+        if (commit != null) {
+            return commit;
+        }
+        byte[] bytes = store.read(TYPE, commitId);
+        if (bytes == null) {
             throw new GitletException("No commit with that id exists.");
         }
-        return Utils.readObject(commitFile, Commit.class);
+        commit = decode(bytes);
+        commit.id = commitId;
+        commit.store = store;
+        store.cache().put(TYPE, commitId, commit, 2L * bytes.length + ENTRY_BYTES);
+        return commit;
+    }
+
+    /** Returns the commit encoded in BYTES, which may also be a commit
+     *  serialized by an older version of gitlet. */
+    static Commit decode(byte[] bytes) {
+        if (!Codec.isEncoded(bytes)) {
+            return Utils.deserialize(bytes, Commit.class);
+        }
+        Codec.Reader in = new Codec.Reader(bytes, 'c');
+        Commit commit = new Commit();
+        commit.timestamp = new Date(in.readLong());
+        commit.message = in.readString();
+        int n = in.readInt();
+        commit.parents = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            commit.parents.add(in.readId());
+        }
+        if (in.version() == 1) {
+            commit.blobs = new TreeMap<>();
+            for (n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readPath();
+                commit.blobs.put(path, in.readId());
+            }
+        } else {
+            commit.tree = in.readId();
+        }
+        return commit;
+    }
+
+    /** Returns this commit in the Codec encoding: version 2 for commits
+     *  with a tree, version 1 for the flat snapshots of older commits. */
+    byte[] encode() {
+        Codec.Writer out = new Codec.Writer('c', tree == null ? 1 : 2);
+        out.writeLong(timestamp.getTime()).writeString(message);
+        out.writeLong(parents.size());
+        for (String parent : parents) {
+            out.writeId(parent);
+        }
+        if (tree == null) {
+            out.writeLong(blobs.size());
+            blobs.forEach((path, blobId) -> out.writePath(path).writeId(blobId));
+        } else {
+            out.writeId(tree);
+        }
+        return out.toByteArray();
     }
 
     public static String getFullCommitId(String commitId) {
-        List<String> commitIds = Utils.plainFilenamesIn(Repository.COMMIT_DIR);
-        List<String> matching = commitIds.stream()
-                .filter(id -> id.startsWith(commitId))
-                .collect(Collectors.toList());
+        List<String> matching = CommitIndex.local().resolve(commitId);
         if (matching.isEmpty()) {
             throw new GitletException("No commit with that id exists.");
         } else if (matching.size() > 1) {
@@ -94,37 +178,98 @@ public class Commit implements Serializable {
         return matching.get(0);
     }
 
-    public static Commit remoteLoad(File remoteCommitFile, String commitId) {
-        return Utils.readObject(Utils.join(remoteCommitFile, commitId), Commit.class);
-    }
-
     public String getID() {
-        return Utils.sha1(timestampConverter(timestamp), message, blobs.toString(), parents.toString());
+        if (id == null && tree == null) {
+            id = Utils.sha1(timestampConverter(timestamp), message, blobs.toString(), parents.toString());
+        } else if (id == null) {
+            id = Utils.sha1(timestampConverter(timestamp), message, tree, parents.toString());
+        }
+        return id;
     }
 
     public void save() {
-        Utils.writeObject(Utils.join(Repository.COMMIT_DIR, getID()), this);
+        ObjectStore.local().write(TYPE, getID(), encode());
+    }
+
+    /** Returns the id of the root tree of this commit.  For a commit made
+     *  by an older gitlet, the trees are built from its flat snapshot (and
+     *  stored) the first time they are needed. */
+    String getTree() {
+        if (tree != null) {
+            return tree;
+        }
+        if (builtTree == null) {
+            builtTree = Tree.build(store(), getBlobs());
+        }
+        return builtTree;
     }
 
     public boolean containsFile(String fileName) {
-        return blobs.containsKey(fileName) && !blobs.get(fileName).startsWith("-");
+        return getBlobId(fileName) != null;
     }
 
+    /** Returns the id of the blob of FILENAME in this commit, or null if it
+     *  does not track FILENAME. */
     public String getBlobId(String fileName) {
-        return blobs.get(fileName);
+        if (files != null) {
+            return files.get(fileName);
+        }
+        if (blobs != null) {
+            String blobId = blobs.get(fileName);
+            return blobId == null || blobId.startsWith("-") ? null : blobId;
+        }
+        return Tree.lookup(store(), tree, fileName);
     }
 
+    /** Returns a map from the path of every file this commit tracks to the
+     *  id of its blob. */
     public Map<String, String> getBlobs() {
-        return blobs;
+        if (files == null) {
+            files = new TreeMap<>();
+            if (blobs != null) {
+                blobs.forEach((path, blobId) -> {
+                    if (!blobId.startsWith("-")) {
+                        files.put(path, blobId);
+                    }
+                });
+            } else {
+                Tree.flatten(store(), tree, "", files);
+            }
+            store().cache().resize(TYPE, getID(), this, (long) files.size() * ENTRY_BYTES);
+        }
+        return files;
+    }
+
+    /** Copies the snapshot of this commit, every tree and blob it refers
+     *  to, from the store it was loaded from into DEST. */
+    void copyContents(ObjectStore dest) {
+        if (blobs != null) {
+            getBlobs().forEach((path, blobId) -> Blob.copy(store(), dest, blobId));
+        } else {
+            Tree.copy(store(), dest, tree);
+        }
+    }
+
+    private ObjectStore store() {
+        if (store == null) {
+            store = ObjectStore.local();
+        }
+        return store;
     }
 
     public void log() {
+        log(getID(), timestamp, message, parents);
+    }
+
+    /** Prints the log entry of the commit with id ID, TIMESTAMP, MESSAGE
+     *  and PARENTS. */
+    static void log(String id, Date timestamp, String message, List<String> parents) {
         System.out.println("===");
-        System.out.println("commit " + getID());
+        System.out.println("commit " + id);
         if (parents.size() > 1) {
             System.out.println("Merge: " + parents.get(0).substring(0, 7) + " " + parents.get(1).substring(0, 7));
         }
-        System.out.println("Date: " + getTimestamp());
+        System.out.println("Date: " + timestampConverter(timestamp));
         System.out.println(message);
         System.out.println();
     }
@@ -0,0 +1,363 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The shape of a repository's history, kept in .gitlet/commit-graph so
+ *  that walking it never loads a commit.  The file is a header
+ *      "GLCG" VERSION
+ *  followed by one fixed-width row per commit:
+ *      ID (20 bytes)  PARENT1  PARENT2  TIMESTAMP (long)  GENERATION
+ *  where the parents are the positions of their rows, or NONE.  Rows are
+ *  only ever appended, parents before children, so positions never
+ *  change and adding a commit writes just its row.  The generation of a
+ *  commit is one more than the largest generation of its parents (1 for
+ *  a root), so a commit can never be an ancestor of one whose generation
+ *  is not larger.
+ *
+ *  A commit missing from the graph (one made before it existed, or just
+ *  fetched) is added, with any missing ancestors, the first time it is
+ *  looked up. */
+class CommitGraph {
+
+    static final int MAGIC = 0x474c4347;   // "GLCG"
+    static final int VERSION = 1;
+    /** Parent position of a missing parent. */
+    static final int NONE = -1;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int ID_BYTES = 20;
+    private static final int ROW_BYTES = ID_BYTES + 4 + 4 + 8 + 4;
+    /** The paint of commits reachable from the first, the second and both
+     *  commits given to mergeBase. */
+    private static final int SIDE_A = 1;
+    private static final int SIDE_B = 2;
+    private static final int BOTH = SIDE_A | SIDE_B;
+
+    private static CommitGraph local;
+
+    private final File file;
+    private final ObjectStore store;
+    /** True if rows added are kept only in memory, for the graph of
+     *  another repository that is only read. */
+    private final boolean readOnly;
+    /** The rows in the file when it was opened. */
+    private ByteBuffer rows;
+    private int mapped;
+    /** Rows added since, in memory; the first unsaved one is at
+     *  position saved. */
+    private ByteBuffer added = ByteBuffer.allocate(ROW_BYTES * 16);
+    private int saved;
+    /** Positions by id, built by the first lookup of a commit that is not
+     *  in the graph, after which scanning the rows for each commit added
+     *  would be quadratic. */
+    private HashMap<String, Integer> positions;
+
+    CommitGraph(File gitletDir, ObjectStore store) {
+        this(gitletDir, store, false);
+    }
+
+    /** The graph of the repository in GITLETDIR, whose commits are in
+     *  STORE, which never writes its file if READONLY. */
+    CommitGraph(File gitletDir, ObjectStore store, boolean readOnly) {
+        this.file = Utils.join(gitletDir, "commit-graph");
+        this.store = store;
+        this.readOnly = readOnly;
+    }
+
+    /** Returns the commit graph of the repository in the current working
+     *  directory. */
+    static CommitGraph local() {
+        if (local == null) {
+            local = new CommitGraph(Repository.GITLET_DIR, ObjectStore.local());
+        }
+        return local;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        open();
+        return mapped + added.position() / ROW_BYTES;
+    }
+
+    /** Returns true iff commit ID is in the graph already. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the position of commit ID, adding it and its ancestors to
+     *  the graph if they are not there yet. */
+    int position(String id) {
+        int pos = find(id);
+        if (pos < 0) {
+            add(id);
+            pos = find(id);
+        }
+        return pos;
+    }
+
+    /** Returns the id of the commit at POS. */
+    String id(int pos) {
+        byte[] raw = new byte[ID_BYTES];
+        row(pos).get(offset(pos), raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the positions of the parents of the commit at POS, first
+     *  parent first. */
+    int[] parents(int pos) {
+        ByteBuffer buf = row(pos);
+        int p1 = buf.getInt(offset(pos) + ID_BYTES);
+        int p2 = buf.getInt(offset(pos) + ID_BYTES + 4);
+        if (p1 == NONE) {
+            return new int[0];
+        }
+        return p2 == NONE ? new int[] { p1 } : new int[] { p1, p2 };
+    }
+
+    /** Returns the position of the first parent of the commit at POS, or
+     *  NONE if it has no parents. */
+    int firstParent(int pos) {
+        return row(pos).getInt(offset(pos) + ID_BYTES);
+    }
+
+    /** Returns the timestamp of the commit at POS in milliseconds. */
+    long timestamp(int pos) {
+        return row(pos).getLong(offset(pos) + ID_BYTES + 8);
+    }
+
+    /** Returns the generation number of the commit at POS. */
+    int generation(int pos) {
+        return row(pos).getInt(offset(pos) + ID_BYTES + 16);
+    }
+
+    /** Returns the position of a best common ancestor of the commits at A
+     *  and B (one that is not an ancestor of any other), or NONE if they
+     *  have none.
+     *
+     *  Both commits are walked at once, newest generation first, painting
+     *  each commit with the sides it is reachable from.  Every child of a
+     *  commit has a larger generation, so a commit's paint is complete
+     *  when it is taken from the queue, and the first one painted by both
+     *  sides is the answer.  The walk also stops once the queue holds no
+     *  commit of one of the sides, since no common ancestor can follow. */
+    int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        byte[] paint = new byte[size()];
+        int[] painted = new int[4];
+        // Largest generation, then latest position, first.
+        PriorityQueue<Long> queue = new PriorityQueue<>(Comparator.reverseOrder());
+        paint[a] = SIDE_A;
+        paint[b] = SIDE_B;
+        painted[SIDE_A] = 1;
+        painted[SIDE_B] = 1;
+        queue.add(queueKey(a));
+        queue.add(queueKey(b));
+        while (painted[BOTH] > 0 || (painted[SIDE_A] > 0 && painted[SIDE_B] > 0)) {
+            int pos = (int) (long) queue.poll();
+            int sides = paint[pos];
+            if (sides == BOTH) {
+                return pos;
+            }
+            painted[sides] -= 1;
+            for (int parent : parents(pos)) {
+                int old = paint[parent];
+                if (old == 0) {
+                    queue.add(queueKey(parent));
+                } else {
+                    painted[old] -= 1;
+                }
+                paint[parent] |= sides;
+                painted[paint[parent]] += 1;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the generation of the commit at POS in the high half and
+     *  POS in the low half, to order the mergeBase queue. */
+    private long queueKey(int pos) {
+        return ((long) generation(pos) << 32) | pos;
+    }
+
+    /** Adds commit ID, and any of its ancestors not yet in the graph, then
+     *  appends their rows to the file.  Does nothing if ID is already
+     *  there. */
+    void add(String id) {
+        add(id, false);
+    }
+
+    /** Adds commit ID, just made and so not yet in the graph, as add
+     *  does, without looking for it first: a lookup that misses reads
+     *  every row. */
+    void addNew(String id) {
+        add(id, true);
+    }
+
+    /** Adds commit ID, which is taken to be missing from the graph if
+     *  ABSENT, and its missing ancestors. */
+    private void add(String id, boolean absent) {
+        open();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            String next = pending.peek();
+            if (!(absent && next.equals(id)) && find(next) >= 0) {
+                pending.pop();
+                continue;
+            }
+            Commit commit = Commit.load(store, next);
+            List<String> parentIds = commit.getParents();
+            if (parentIds.size() > 2) {
+                throw new IllegalArgumentException("commit with more than two parents: " + next);
+            }
+            int[] parents = { NONE, NONE };
+            boolean ready = true;
+            for (int i = 0; i < parentIds.size(); i += 1) {
+                parents[i] = find(parentIds.get(i));
+                if (parents[i] < 0) {
+                    pending.push(parentIds.get(i));
+                    ready = false;
+                }
+            }
+            if (ready) {
+                pending.pop();
+                append(next, parents, commit.getDate().getTime());
+            }
+        }
+        save();
+    }
+
+    private void append(String id, int[] parents, long timestamp) {
+        int generation = 1;
+        for (int parent : parents) {
+            if (parent != NONE) {
+                generation = Math.max(generation, generation(parent) + 1);
+            }
+        }
+        if (added.remaining() < ROW_BYTES) {
+            ByteBuffer bigger = ByteBuffer.allocate(added.capacity() * 2);
+            added.flip();
+            bigger.put(added);
+            added = bigger;
+        }
+        added.put(Utils.fromHex(id)).putInt(parents[0]).putInt(parents[1])
+                .putLong(timestamp).putInt(generation);
+        if (positions != null) {
+            positions.put(id, size() - 1);
+        }
+    }
+
+    /** Appends the rows added since the last save to the file, first
+     *  cutting off any partly written last row, or starting the file over
+     *  if it does not even hold a whole header. */
+    private void save() {
+        int end = added.position();
+        int start = (saved - mapped) * ROW_BYTES;
+        if (end == start || readOnly) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip(), 0);
+                size = HEADER_BYTES;
+            } else {
+                size -= (size - HEADER_BYTES) % ROW_BYTES;
+                channel.truncate(size);
+            }
+            ByteBuffer unsaved = ByteBuffer.wrap(added.array(), start, end - start);
+            while (unsaved.hasRemaining()) {
+                size += channel.write(unsaved, size);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        saved = size();
+    }
+
+    /** Returns the position of commit ID, or -1 if it is not in the
+     *  graph or is not a commit id at all.  The rows are scanned newest
+     *  first, since lookups are mostly of branch heads and other recent
+     *  commits, until one misses: a commit not in the graph is usually
+     *  about to be added, with others, so the rows are then indexed by
+     *  id. */
+    private int find(String id) {
+        if (!Utils.isUid(id)) {
+            return -1;
+        }
+        open();
+        if (positions != null) {
+            return positions.getOrDefault(id, -1);
+        }
+        byte[] key = Utils.fromHex(id);
+        byte[] probe = new byte[ID_BYTES];
+        for (int pos = size() - 1; pos >= 0; pos -= 1) {
+            ByteBuffer buf = row(pos);
+            int off = offset(pos);
+            if (buf.get(off) != key[0]) {
+                continue;
+            }
+            buf.get(off, probe);
+            if (Arrays.equals(probe, key)) {
+                return pos;
+            }
+        }
+        positions = new HashMap<>();
+        for (int pos = 0; pos < size(); pos += 1) {
+            positions.put(id(pos), pos);
+        }
+        return -1;
+    }
+
+    private ByteBuffer row(int pos) {
+        return pos < mapped ? rows : added;
+    }
+
+    private int offset(int pos) {
+        return pos < mapped ? HEADER_BYTES + pos * ROW_BYTES : (pos - mapped) * ROW_BYTES;
+    }
+
+    /** Maps the rows of the file into memory, ignoring any partly
+     *  written last row, and a file too short to hold its header, as left
+     *  by a crash, as if it were missing. */
+    private void open() {
+        if (rows != null) {
+            return;
+        }
+        if (!file.isFile()) {
+            rows = ByteBuffer.allocate(0);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                rows = ByteBuffer.allocate(0);
+                return;
+            }
+            size -= (size - HEADER_BYTES) % ROW_BYTES;
+            rows = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (rows.getInt(0) != MAGIC || rows.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad commit graph " + file);
+        }
+        mapped = (rows.capacity() - HEADER_BYTES) / ROW_BYTES;
+        saved = mapped;
+    }
+}
@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The ids of all commits of a repository, kept in .gitlet/commit-index
+ *  so that an abbreviated id is resolved without listing the objects.
+ *  The file is
+ *      "GLCI" VERSION COUNT FANOUT[256] ID...
+ *  with COUNT ids sorted and FANOUT[B] the number of them whose first byte
+ *  is at most B, as in a pack index, so finding a prefix is a binary
+ *  search within one bucket.  New ids are appended unsorted after the
+ *  sorted ones, and are merged into them once there are more than
+ *  MAX_TAIL (or an eighth of COUNT), so adding a commit usually writes 20
+ *  bytes.
+ *
+ *  If the file is missing, or a prefix matches nothing while the index
+ *  holds fewer commits than the commit graph (say, after an interrupted
+ *  commit), it is rebuilt from the object store.  Otherwise a prefix
+ *  that matches nothing is trusted to name no commit, without listing
+ *  the objects. */
+class CommitIndex {
+
+    static final int MAGIC = 0x474c4349;   // "GLCI"
+    static final int VERSION = 1;
+
+    private static final int ID_BYTES = 20;
+    private static final int HEADER_BYTES = 12;
+    private static final int FANOUT_BYTES = 256 * 4;
+    private static final int MAX_TAIL = 256;
+
+    private static CommitIndex local;
+
+    private final File file;
+    private final ObjectStore store;
+    private final CommitGraph graph;
+    private ByteBuffer index;
+    private int count;
+    private int tail;
+
+    /** The index of the repository in GITLETDIR, whose commits are in
+     *  STORE and GRAPH. */
+    CommitIndex(File gitletDir, ObjectStore store, CommitGraph graph) {
+        this.file = Utils.join(gitletDir, "commit-index");
+        this.store = store;
+        this.graph = graph;
+    }
+
+    /** Returns the commit index of the repository in the current working
+     *  directory. */
+    static CommitIndex local() {
+        if (local == null) {
+            local = new CommitIndex(Repository.GITLET_DIR, ObjectStore.local(), CommitGraph.local());
+        }
+        return local;
+    }
+
+    /** Returns the ids of all commits whose id starts with PREFIX. */
+    List<String> resolve(String prefix) {
+        if (!prefix.matches("[0-9a-f]{1,40}")) {
+            return new ArrayList<>();
+        }
+        List<String> matches = find(prefix);
+        if (matches.isEmpty() && count + tail < graph.size()) {
+            rebuild();
+            matches = find(prefix);
+        }
+        return matches;
+    }
+
+    /** Records commit ID. */
+    void add(String id) {
+        open();
+        if (!find(id).isEmpty()) {
+            return;
+        }
+        if (tail + 1 > Math.max(MAX_TAIL, count / 8)) {
+            TreeSet<String> ids = new TreeSet<>(all());
+            ids.add(id);
+            write(ids);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(Utils.fromHex(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        index = null;
+    }
+
+    /** Rewrites the index from the commits in the object store. */
+    void rebuild() {
+        write(new TreeSet<>(store.list(Commit.TYPE)));
+    }
+
+    private List<String> find(String prefix) {
+        open();
+        List<String> matches = new ArrayList<>();
+        byte[] low = Utils.fromHex((prefix + "0".repeat(Utils.UID_LENGTH)).substring(0, Utils.UID_LENGTH));
+        int first = low[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(HEADER_BYTES + (first - 1) * 4);
+        int hi = index.getInt(HEADER_BYTES + first * 4);
+        byte[] probe = new byte[ID_BYTES];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(idOffset(mid), probe);
+            if (Pack.compareIds(probe, low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int pos = lo; pos < count; pos += 1) {
+            String id = idAt(pos);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            matches.add(id);
+        }
+        for (int pos = count; pos < count + tail; pos += 1) {
+            String id = idAt(pos);
+            if (id.startsWith(prefix) && !matches.contains(id)) {
+                matches.add(id);
+            }
+        }
+        return matches;
+    }
+
+    private List<String> all() {
+        List<String> ids = new ArrayList<>(count + tail);
+        for (int pos = 0; pos < count + tail; pos += 1) {
+            ids.add(idAt(pos));
+        }
+        return ids;
+    }
+
+    private String idAt(int pos) {
+        byte[] raw = new byte[ID_BYTES];
+        index.get(idOffset(pos), raw);
+        return Utils.toHex(raw);
+    }
+
+    private static int idOffset(int pos) {
+        return HEADER_BYTES + FANOUT_BYTES + pos * ID_BYTES;
+    }
+
+    /** Replaces the file with the sorted IDS and no tail. */
+    private void write(TreeSet<String> ids) {
+        int[] fanout = new int[256];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            int total = 0;
+            for (int n : fanout) {
+                total += n;
+                out.writeInt(total);
+            }
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        index = null;
+    }
+
+    /** Maps the file, building it first if it does not exist. */
+    private void open() {
+        if (index != null) {
+            return;
+        }
+        if (!file.isFile()) {
+            rebuild();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (index.capacity() < HEADER_BYTES + FANOUT_BYTES
+                || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad commit index " + file);
+        }
+        count = index.getInt(8);
+        tail = (index.capacity() - idOffset(count)) / ID_BYTES;
+        if ((index.capacity() - idOffset(count)) % ID_BYTES != 0) {
+            // A torn append; start over rather than misalign later ones.
+            rebuild();
+            open();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** The metadata of every commit (id, timestamp, message and parents),
+ *  kept so that global-log and find never load commit objects.
+ *
+ *  .gitlet/commit-log holds one record per commit, appended as commits
+ *  are made or fetched:
+ *      LENGTH ID TIMESTAMP PARENT-COUNT PARENT-ID... MESSAGE
+ *  so global-log is one sequential read.  .gitlet/message-index maps the
+ *  64-bit hash of each message to the offset of its record:
+ *      "GLMI" VERSION LOG-END COUNT (HASH OFFSET)...
+ *  with COUNT entries sorted by hash and newer ones appended unsorted
+ *  after them until there are enough to be worth merging in, so find is
+ *  a binary search.  LOG-END is the length of the log the index covers;
+ *  if it disagrees with the log (after an interrupted write) or either
+ *  file is missing, both are rebuilt from the object store. */
+class CommitLog {
+
+    static final int MAGIC = 0x474c4d49;   // "GLMI"
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 20;
+    private static final int ENTRY_BYTES = 16;
+    private static final int MAX_TAIL = 256;
+
+    /** The metadata of one commit. */
+    static class Record {
+        final String id;
+        final long timestamp;
+        final String message;
+        final List<String> parents;
+
+        Record(String id, long timestamp, String message, List<String> parents) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.message = message;
+            this.parents = parents;
+        }
+
+        /** Prints this commit as log and global-log do. */
+        void log() {
+            Commit.log(id, new Date(timestamp), message, parents);
+        }
+    }
+
+    private static CommitLog local;
+
+    private final File logFile;
+    private final File indexFile;
+    private final ObjectStore store;
+    private boolean checked;
+
+    CommitLog(File gitletDir, ObjectStore store) {
+        this.logFile = Utils.join(gitletDir, "commit-log");
+        this.indexFile = Utils.join(gitletDir, "message-index");
+        this.store = store;
+    }
+
+    /** Returns the commit log of the repository in the current working
+     *  directory. */
+    static CommitLog local() {
+        if (local == null) {
+            local = new CommitLog(Repository.GITLET_DIR, ObjectStore.local());
+        }
+        return local;
+    }
+
+    /** Passes every record to ACTION, in the order the commits were
+     *  added. */
+    void forEach(Consumer<Record> action) {
+        check();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(logFile), Blob.BUFFER_SIZE))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException excp) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                action.accept(decode(bytes));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the records of the commits whose message is exactly
+     *  MESSAGE, sorted by id. */
+    List<Record> find(String message) {
+        check();
+        List<Record> found = new ArrayList<>();
+        long hash = hash(message);
+        ByteBuffer index;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int count = index.getInt(16);
+        int total = (index.capacity() - HEADER_BYTES) / ENTRY_BYTES;
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getLong(HEADER_BYTES + mid * ENTRY_BYTES) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Long> offsets = new ArrayList<>();
+        for (int i = lo; i < count && index.getLong(HEADER_BYTES + i * ENTRY_BYTES) == hash; i += 1) {
+            offsets.add(index.getLong(HEADER_BYTES + i * ENTRY_BYTES + 8));
+        }
+        for (int i = count; i < total; i += 1) {
+            if (index.getLong(HEADER_BYTES + i * ENTRY_BYTES) == hash) {
+                offsets.add(index.getLong(HEADER_BYTES + i * ENTRY_BYTES + 8));
+            }
+        }
+        try (RandomAccessFile log = new RandomAccessFile(logFile, "r")) {
+            for (long offset : offsets) {
+                log.seek(offset);
+                byte[] bytes = new byte[log.readInt()];
+                log.readFully(bytes);
+                Record record = decode(bytes);
+                if (record.message.equals(message)) {
+                    found.add(record);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        found.sort(Comparator.comparing(r -> r.id));
+        return found;
+    }
+
+    /** Records COMMIT unless it is already recorded. */
+    void add(Commit commit) {
+        check();
+        for (Record record : find(commit.getMessage())) {
+            if (record.id.equals(commit.getID())) {
+                return;
+            }
+        }
+        append(List.of(record(commit)), logFile.length());
+    }
+
+    /** Rewrites both files from the commits in the object store, oldest
+     *  first. */
+    void rebuild() {
+        List<Record> records = new ArrayList<>();
+        for (String id : store.list(Commit.TYPE)) {
+            records.add(record(Commit.load(store, id)));
+        }
+        records.sort(Comparator.comparingLong(r -> r.timestamp));
+        logFile.delete();
+        indexFile.delete();
+        append(records, 0);
+    }
+
+    /** Appends RECORDS to the log, which is LOGEND bytes long, and their
+     *  entries to the message index. */
+    private void append(List<Record> records, long logEnd) {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        long offset = logEnd;
+        try (DataOutputStream log = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(logFile, true), Blob.BUFFER_SIZE))) {
+            for (Record record : records) {
+                byte[] bytes = encode(record);
+                log.writeInt(bytes.length);
+                log.write(bytes);
+                entries.write(ByteBuffer.allocate(ENTRY_BYTES)
+                        .putLong(hash(record.message)).putLong(offset).array());
+                offset += 4 + bytes.length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        int added = entries.size() / ENTRY_BYTES;
+        if (indexFile.isFile()) {
+            // Usually the new entries just go on the unsorted tail, which
+            // needs only the header, not the whole index.
+            try (RandomAccessFile out = new RandomAccessFile(indexFile, "rw")) {
+                long length = out.length();
+                out.seek(16);
+                int count = out.readInt();
+                long tail = (length - HEADER_BYTES) / ENTRY_BYTES - count;
+                if (tail + added <= Math.max(MAX_TAIL, count / 8)) {
+                    out.seek(length);
+                    out.write(entries.toByteArray());
+                    out.seek(8);
+                    out.writeLong(offset);
+                    return;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        byte[] index = indexFile.isFile() ? Utils.readContents(indexFile) : new byte[0];
+        int count = index.length == 0 ? 0 : ByteBuffer.wrap(index).getInt(16);
+        int tail = index.length == 0 ? 0 : (index.length - HEADER_BYTES) / ENTRY_BYTES - count;
+        int total = count + tail + added;
+        long[][] all = new long[total][];
+        ByteBuffer old = ByteBuffer.wrap(index);
+        for (int i = 0; i < count + tail; i += 1) {
+            all[i] = new long[] { old.getLong(HEADER_BYTES + i * ENTRY_BYTES),
+                old.getLong(HEADER_BYTES + i * ENTRY_BYTES + 8) };
+        }
+        ByteBuffer fresh = ByteBuffer.wrap(entries.toByteArray());
+        for (int i = 0; i < added; i += 1) {
+            all[count + tail + i] = new long[] { fresh.getLong(), fresh.getLong() };
+        }
+        Arrays.sort(all, Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + total * ENTRY_BYTES);
+        out.putInt(MAGIC).putInt(VERSION).putLong(offset).putInt(total);
+        for (long[] e : all) {
+            out.putLong(e[0]).putLong(e[1]);
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        Utils.writeContents(temp, out.array());
+        try {
+            Files.move(temp.toPath(), indexFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rebuilds both files if either is missing or they disagree. */
+    private void check() {
+        if (checked) {
+            return;
+        }
+        checked = true;
+        if (!logFile.isFile() || !indexFile.isFile()) {
+            rebuild();
+            return;
+        }
+        try (InputStream in = new FileInputStream(indexFile)) {
+            ByteBuffer header = ByteBuffer.wrap(in.readNBytes(HEADER_BYTES));
+            if (header.capacity() < HEADER_BYTES || header.getInt(0) != MAGIC
+                    || header.getInt(4) != VERSION || header.getLong(8) != logFile.length()
+                    || (indexFile.length() - HEADER_BYTES) % ENTRY_BYTES != 0) {
+                rebuild();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static Record record(Commit commit) {
+        return new Record(commit.getID(), commit.getDate().getTime(),
+                commit.getMessage(), commit.getParents());
+    }
+
+    private static byte[] encode(Record record) {
+        ByteBuffer buf = ByteBuffer.allocate(20 + 8 + 4 + 20 * record.parents.size());
+        buf.put(Utils.fromHex(record.id)).putLong(record.timestamp).putInt(record.parents.size());
+        for (String parent : record.parents) {
+            buf.put(Utils.fromHex(parent));
+        }
+        byte[] message = record.message.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buf.capacity() + message.length);
+        out.write(buf.array(), 0, buf.capacity());
+        out.write(message, 0, message.length);
+        return out.toByteArray();
+    }
+
+    private static Record decode(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        byte[] raw = new byte[20];
+        buf.get(raw);
+        String id = Utils.toHex(raw);
+        long timestamp = buf.getLong();
+        List<String> parents = new ArrayList<>();
+        for (int n = buf.getInt(); n > 0; n -= 1) {
+            buf.get(raw);
+            parents.add(Utils.toHex(raw));
+        }
+        String message = new String(bytes, buf.position(), buf.remaining(), StandardCharsets.UTF_8);
+        return new Record(id, timestamp, message, parents);
+    }
+
+    /** Returns a 64-bit hash of MESSAGE. */
+    private static long hash(String message) {
+        return ByteBuffer.wrap(Utils.fromHex(Utils.sha1(message))).getLong();
+    }
+}
@@ -1,13 +1,63 @@
 package gitlet;
 
+import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 public class Config implements Serializable {
+    private static final long serialVersionUID = 8830722111870902654L;
     public HashMap<String, String> remote = new HashMap<>();
+    /** Absolute paths of the object directories of other repositories
+     *  whose objects this one may read but never writes. */
+    public List<String> alternates = new ArrayList<>();
 
     public static Config load() {
-        return Utils.readObject(Repository.CONFIG_FILE, Config.class);
+        return load(Repository.GITLET_DIR);
+    }
+
+    /** Returns the configuration of the repository in GITLETDIR, which is
+     *  empty if it has none. */
+    public static Config load(File gitletDir) {
+        File file = Utils.join(gitletDir, "config");
+        if (!file.isFile()) {
+            return new Config();
+        }
+        byte[] bytes = Utils.readContents(file);
+        if (!Codec.isEncoded(bytes)) {
+            Config config = Utils.deserialize(bytes, Config.class);
+            if (config.alternates == null) {
+                config.alternates = new ArrayList<>();
+            }
+            return config;
+        }
+        Codec.Reader in = new Codec.Reader(bytes, 'k');
+        Config config = new Config();
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String name = in.readString();
+            config.remote.put(name, in.readString());
+        }
+        if (in.version() >= 2) {
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                config.alternates.add(in.readString());
+            }
+        }
+        return config;
+    }
+
+    /** Makes the objects of the repository in GITLETDIR, and those it
+     *  reads from its own alternates, readable from this one. */
+    public void share(File gitletDir) {
+        List<String> dirs = new ArrayList<>();
+        dirs.add(Utils.join(gitletDir, "objects").getAbsoluteFile().toPath().normalize().toString());
+        dirs.addAll(load(gitletDir).alternates);
+        String own = Utils.join(Repository.GITLET_DIR, "objects").getAbsoluteFile().toPath().normalize().toString();
+        for (String dir : dirs) {
+            if (!dir.equals(own) && !alternates.contains(dir)) {
+                alternates.add(dir);
+            }
+        }
     }
 
     public void add(String remoteName, String remotePath) {
@@ -15,11 +65,16 @@ public class Config implements Serializable {
     }
 
     public void save() {
-        Utils.writeObject(Repository.CONFIG_FILE, this);
+        Codec.Writer out = new Codec.Writer('k', 2);
+        out.writeLong(remote.size());
+        remote.forEach((name, path) -> out.writeString(name).writeString(path));
+        out.writeLong(alternates.size());
+        alternates.forEach(out::writeString);
+        Utils.writeContents(Repository.CONFIG_FILE, out.toByteArray());
     }
 
     public static void clear() {
-        Utils.writeObject(Repository.CONFIG_FILE, new Config());
+        new Config().save();
     }
 
     public static void addRemote(String remoteName, String remotePath) {
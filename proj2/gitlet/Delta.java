@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/** Copy/insert deltas between two versions of a file.  A delta is a
+ *  stream of instructions that rebuilds a target from a base: COPY takes
+ *  a run of bytes from the base, INSERT supplies literal bytes.
+ *
+ *  The encoding is the base length and the target length as varints,
+ *  followed by instructions, each an opcode byte and varint operands:
+ *      COPY   offset length
+ *      INSERT length byte...
+ *  Matches are found by indexing every BLOCK-byte block of the base by a
+ *  rolling hash and sliding the same hash over the target. */
+class Delta {
+
+    static final int COPY = 1;
+    static final int INSERT = 2;
+
+    /** Length of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 0x01000193;
+    /** PRIME to the power BLOCK - 1, used to drop the outgoing byte. */
+    private static final int OUT_FACTOR;
+
+    static {
+        int f = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            f *= PRIME;
+        }
+        OUT_FACTOR = f;
+    }
+
+    /** Returns the instructions that rebuild TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Codec.writeVarint(out, base.length);
+        Codec.writeVarint(out, target.length);
+
+        int blocks = base.length / BLOCK;
+        int capacity = Integer.highestOneBit(Math.max(1, blocks) * 2) * 2;
+        int mask = capacity - 1;
+        int[] table = new int[capacity];
+        for (int b = 0; b < blocks; b += 1) {
+            int slot = hash(base, b * BLOCK) & mask;
+            if (table[slot] == 0) {
+                table[slot] = b * BLOCK + 1;
+            }
+        }
+
+        int pending = 0;
+        int t = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (t + BLOCK <= target.length) {
+            int candidate = blocks == 0 ? 0 : table[h & mask];
+            int length = 0;
+            int b = candidate - 1;
+            if (candidate != 0) {
+                while (b + length < base.length && t + length < target.length
+                        && base[b + length] == target[t + length]) {
+                    length += 1;
+                }
+            }
+            if (length >= BLOCK) {
+                while (t > pending && b > 0 && base[b - 1] == target[t - 1]) {
+                    t -= 1;
+                    b -= 1;
+                    length += 1;
+                }
+                writeInsert(out, target, pending, t);
+                out.write(COPY);
+                Codec.writeVarint(out, b);
+                Codec.writeVarint(out, length);
+                t += length;
+                pending = t;
+                if (t + BLOCK <= target.length) {
+                    h = hash(target, t);
+                }
+                continue;
+            }
+            if (t + BLOCK < target.length) {
+                h = (h - target[t] * OUT_FACTOR) * PRIME + target[t + BLOCK];
+            }
+            t += 1;
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the target rebuilt by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        if (Codec.readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta does not match its base");
+        }
+        byte[] target = new byte[(int) Codec.readVarint(delta, pos)];
+        int t = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int offset = (int) Codec.readVarint(delta, pos);
+                int length = (int) Codec.readVarint(delta, pos);
+                System.arraycopy(base, offset, target, t, length);
+                t += length;
+            } else if (op == INSERT) {
+                int length = (int) Codec.readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], target, t, length);
+                pos[0] += length;
+                t += length;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (t != target.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return target;
+    }
+
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data,
+                                    int start, int end) {
+        if (end > start) {
+            out.write(INSERT);
+            Codec.writeVarint(out, end - start);
+            out.write(data, start, end - start);
+        }
+    }
+}
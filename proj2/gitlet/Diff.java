@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/** A line diff of two sequences, found with Myers' O(ND) algorithm in its
+ *  linear-space form: each step finds the middle snake of the remaining
+ *  range by searching from both ends at once, then recurses on the two
+ *  halves, so memory is O(N + M) however different the inputs are.
+ *
+ *  Time is O((N + M) D) for D differences, which is fine for similar
+ *  files but not for very different ones.  So lines found in only one of
+ *  the sequences are dropped before searching, and the search in a range
+ *  gives up after MIN_COST (or about the square root of the range size,
+ *  if larger) steps and splits the range where the forward search got
+ *  furthest instead.  The result is then still a correct diff, if not always a
+ *  minimal one, as in git's xdiff. */
+class Diff {
+
+    /** The least number of steps tried before a search gives up. */
+    static final int MIN_COST = 256;
+
+    /** Lines [ASTART, AEND) of the first sequence replaced by lines
+     *  [BSTART, BEND) of the second.  Either range may be empty. */
+    static class Hunk {
+        final int aStart;
+        final int aEnd;
+        final int bStart;
+        final int bEnd;
+
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    private final int[] a;
+    private final int[] b;
+    /** For each line of A, the line of B it is matched with, or -1. */
+    private final int[] matchA;
+    private final int[] forward;
+    private final int[] backward;
+
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        this.matchA = new int[a.length];
+        Arrays.fill(matchA, -1);
+        int size = 2 * (a.length + b.length) + 3;
+        this.forward = new int[size];
+        this.backward = new int[size];
+    }
+
+    /** Returns the hunks, in order, that turn A into B, where equal
+     *  numbers stand for equal lines. */
+    static List<Hunk> diff(int[] a, int[] b) {
+        // A line that is not in the other sequence cannot be matched, so
+        // it is left out of the search: two unrelated files then cost
+        // nothing to compare.
+        int[] aKept = kept(a, b);
+        int[] bKept = kept(b, a);
+        Diff d = new Diff(select(a, aKept), select(b, bKept));
+        d.compare(0, aKept.length, 0, bKept.length);
+
+        int[] matchA = new int[a.length];
+        Arrays.fill(matchA, -1);
+        for (int i = 0; i < aKept.length; i += 1) {
+            if (d.matchA[i] >= 0) {
+                matchA[aKept[i]] = bKept[d.matchA[i]];
+            }
+        }
+        return hunks(matchA, b.length);
+    }
+
+    /** Returns the indices of the elements of X that occur in Y. */
+    private static int[] kept(int[] x, int[] y) {
+        Set<Integer> present = new HashSet<>();
+        for (int v : y) {
+            present.add(v);
+        }
+        return IntStream.range(0, x.length).filter(i -> present.contains(x[i])).toArray();
+    }
+
+    /** Returns the elements of X at INDICES. */
+    private static int[] select(int[] x, int[] indices) {
+        int[] result = new int[indices.length];
+        for (int i = 0; i < indices.length; i += 1) {
+            result[i] = x[indices[i]];
+        }
+        return result;
+    }
+
+    /** Matches up lines [ALO, AHI) of A with lines [BLO, BHI) of B. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            matchA[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            matchA[aHi - 1] = bHi - 1;
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        int x = snake[0];
+        int y = snake[1];
+        int u = snake[2];
+        for (int i = x; i < u; i += 1) {
+            matchA[i] = y + i - x;
+        }
+        compare(aLo, x, bLo, y);
+        compare(u, aHi, snake[3], bHi);
+    }
+
+    /** Returns {X, Y, U, V}: a run of equal lines A[X, U) and B[Y, V)
+     *  (possibly empty) on an optimal, or at least reasonable, path
+     *  through the given ranges, which differ at both ends, splitting
+     *  them into two smaller problems. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int offset = n + m + 1;
+        int maxD = (n + m + 1) / 2;
+        int maxCost = Math.max(MIN_COST, (int) Math.sqrt(n + m));
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        for (int d = 0; d <= maxD; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1
+                        && x + backward[offset + kb] >= n) {
+                    return new int[] { aLo + x0, bLo + y0, aLo + x, bLo + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d
+                        && x + forward[offset + kf] >= n) {
+                    return new int[] { aHi - x, bHi - y, aHi - x0, bHi - y0 };
+                }
+            }
+            if (d >= maxCost) {
+                return furthest(aLo, bLo, n, m, d, offset);
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Returns an empty snake at the point the forward search, after D
+     *  steps, got furthest along, for a range of N by M lines at ALO,
+     *  BLO. */
+    private int[] furthest(int aLo, int bLo, int n, int m, int d, int offset) {
+        int bestX = -1;
+        int bestY = -1;
+        for (int k = -d; k <= d; k += 2) {
+            int x = Math.min(forward[offset + k], n);
+            int y = x - k;
+            if (y < 0 || y > m || (x == n && y == m)) {
+                continue;
+            }
+            if (x + y > bestX + bestY) {
+                bestX = x;
+                bestY = y;
+            }
+        }
+        return new int[] { aLo + bestX, bLo + bestY, aLo + bestX, bLo + bestY };
+    }
+
+    /** Returns the hunks between the lines of a sequence matched, by
+     *  MATCHA, with those of one of length M. */
+    private static List<Hunk> hunks(int[] matchA, int m) {
+        List<Hunk> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < matchA.length || j < m) {
+            if (i < matchA.length && matchA[i] == j) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int aStart = i;
+            int bStart = j;
+            while (i < matchA.length && matchA[i] < 0) {
+                i += 1;
+            }
+            j = i < matchA.length ? matchA[i] : m;
+            result.add(new Hunk(aStart, i, bStart, j));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A three-way merge of the lines of two files against the version they
+ *  both came from.  Each side is diffed against the base; a hunk that
+ *  only one side changed is taken from that side, and hunks of the two
+ *  sides that overlap or touch are merged into one region, which is
+ *  taken as is if both sides made the same change, and otherwise written
+ *  as a conflict:
+ *      <<<<<<< HEAD
+ *      (the current lines)
+ *      =======
+ *      (the given lines)
+ *      >>>>>>>
+ *  Files are treated as bytes, split after each newline, so contents in
+ *  any encoding come through unchanged. */
+class Diff3 {
+
+    /** The merged contents of a file, and whether they hold conflicts. */
+    static class Result {
+        final byte[] contents;
+        final boolean conflict;
+
+        Result(byte[] contents, boolean conflict) {
+            this.contents = contents;
+            this.conflict = conflict;
+        }
+    }
+
+    /** Returns the merge of CURRENT and GIVEN, both derived from BASE. */
+    static Result merge(byte[] base, byte[] current, byte[] given) {
+        Map<String, Integer> numbers = new HashMap<>();
+        List<String> baseLines = lines(base);
+        List<String> currentLines = lines(current);
+        List<String> givenLines = lines(given);
+        int[] baseNums = number(baseLines, numbers);
+        List<Diff.Hunk> ours = Diff.diff(baseNums, number(currentLines, numbers));
+        List<Diff.Hunk> theirs = Diff.diff(baseNums, number(givenLines, numbers));
+
+        StringBuilder out = new StringBuilder();
+        boolean conflict = false;
+        int pos = 0;
+        /* Offsets of the current and given lines from the base lines, as
+         * of the hunks already passed. */
+        int oursShift = 0;
+        int theirsShift = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            // Start a region at the earlier hunk, then take in every hunk of
+            // either side that overlaps or touches it.
+            int start;
+            int end;
+            if (j == theirs.size() || (i < ours.size() && ours.get(i).aStart <= theirs.get(j).aStart)) {
+                start = ours.get(i).aStart;
+                end = ours.get(i).aEnd;
+            } else {
+                start = theirs.get(j).aStart;
+                end = theirs.get(j).aEnd;
+            }
+            int iEnd = i;
+            int jEnd = j;
+            while (true) {
+                if (iEnd < ours.size() && ours.get(iEnd).aStart <= end) {
+                    end = Math.max(end, ours.get(iEnd).aEnd);
+                    iEnd += 1;
+                } else if (jEnd < theirs.size() && theirs.get(jEnd).aStart <= end) {
+                    end = Math.max(end, theirs.get(jEnd).aEnd);
+                    jEnd += 1;
+                } else {
+                    break;
+                }
+            }
+            append(out, baseLines, pos, start);
+
+            int oursEnd = oursShift;
+            for (int h = i; h < iEnd; h += 1) {
+                oursEnd += size(ours.get(h));
+            }
+            int theirsEnd = theirsShift;
+            for (int h = j; h < jEnd; h += 1) {
+                theirsEnd += size(theirs.get(h));
+            }
+            List<String> mine = currentLines.subList(start + oursShift, end + oursEnd);
+            List<String> other = givenLines.subList(start + theirsShift, end + theirsEnd);
+            if (j == jEnd) {
+                append(out, mine, 0, mine.size());
+            } else if (i == iEnd || mine.equals(other)) {
+                append(out, other, 0, other.size());
+            } else {
+                conflict = true;
+                out.append("<<<<<<< HEAD\n");
+                append(out, mine, 0, mine.size());
+                out.append("=======\n");
+                append(out, other, 0, other.size());
+                out.append(">>>>>>>\n");
+            }
+            oursShift = oursEnd;
+            theirsShift = theirsEnd;
+            pos = end;
+            i = iEnd;
+            j = jEnd;
+        }
+        append(out, baseLines, pos, baseLines.size());
+        return new Result(out.toString().getBytes(StandardCharsets.ISO_8859_1), conflict);
+    }
+
+    /** Returns the change in length a hunk makes. */
+    private static int size(Diff.Hunk hunk) {
+        return (hunk.bEnd - hunk.bStart) - (hunk.aEnd - hunk.aStart);
+    }
+
+    /** Returns the lines of CONTENTS, each with its newline, if any. */
+    private static List<String> lines(byte[] contents) {
+        String text = new String(contents, StandardCharsets.ISO_8859_1);
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start) + 1;
+            if (end == 0) {
+                end = text.length();
+            }
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    /** Returns LINES as numbers, the same for equal lines, drawn from and
+     *  added to NUMBERS. */
+    private static int[] number(List<String> lines, Map<String, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = numbers.computeIfAbsent(lines.get(k), line -> numbers.size());
+        }
+        return result;
+    }
+
+    private static void append(StringBuilder out, List<String> lines, int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            out.append(lines.get(k));
+        }
+    }
+}
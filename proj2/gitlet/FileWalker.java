@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Lists the files of the working directory that .gitletignore does not
+ *  exclude.  Each directory is read by its own task on the common
+ *  fork/join pool, so the subdirectories of a large tree are read in
+ *  parallel, and ignored directories are dropped before any task is made
+ *  for them, so nothing under them is read.
+ *  Paths are relative to the working directory and separated by '/', as
+ *  they are in commits.  Symbolic links are not followed. */
+class FileWalker {
+
+    /** Returns the paths of the regular files under directory DIR that
+     *  are not ignored, in sorted order. */
+    static Set<String> walk(File dir) {
+        String prefix = relativePath(dir);
+        Ignore ignore = Ignore.local();
+        return new TreeSet<>(ForkJoinPool.commonPool().invoke(new Task(ignore, dir.toPath(), prefix)));
+    }
+
+    /** Returns the path of FILE relative to the working directory,
+     *  separated by '/', which is empty for the working directory
+     *  itself. */
+    static String relativePath(File file) {
+        return Repository.CWD.toPath().relativize(file.toPath().toAbsolutePath().normalize())
+                .toString().replace(File.separatorChar, '/');
+    }
+
+    /** Lists the files under one directory. */
+    private static class Task extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 3820025369359072449L;
+
+        private final Ignore ignore;
+        private final Path dir;
+        private final String prefix;
+
+        /** A task listing DIR, whose relative path is PREFIX, skipping
+         *  what IGNORE ignores. */
+        Task(Ignore ignore, Path dir, String prefix) {
+            this.ignore = ignore;
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> files = new ArrayList<>();
+            List<Task> subdirs = new ArrayList<>();
+            try {
+                Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1,
+                        new SimpleFileVisitor<>() {
+                            @Override
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                                String name = file.getFileName().toString();
+                                String path = prefix.isEmpty() ? name : prefix + "/" + name;
+                                if (ignore.isIgnored(path, attrs.isDirectory())) {
+                                    return FileVisitResult.CONTINUE;
+                                }
+                                if (attrs.isDirectory()) {
+                                    subdirs.add(new Task(ignore, file, path));
+                                } else if (attrs.isRegularFile()) {
+                                    files.add(path);
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFileFailed(Path file, IOException excp) {
+                                return FileVisitResult.CONTINUE;
+                            }
+                        });
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            invokeAll(subdirs);
+            for (Task subdir : subdirs) {
+                files.addAll(subdir.join());
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/** The patterns of .gitletignore, compiled once per command, deciding
+ *  which working files are neither tracked by "add DIR" nor reported as
+ *  untracked.  The syntax is that of .gitignore, for the one file at the
+ *  top of the working directory:
+ *    - blank lines and lines starting with # are skipped;
+ *    - a leading ! re-includes what earlier patterns excluded, and the
+ *      last pattern matching a path decides it;
+ *    - a trailing / matches only directories;
+ *    - a pattern with a / anywhere else is relative to the top of the
+ *      working directory, and one without matches a name at any depth;
+ *    - * and ? match within a name, [...] matches one character of a set,
+ *      and ** matches any number of whole directories.
+ *  A path under an ignored directory cannot be re-included, since the
+ *  directory is never read.  A .gitlet directory is always ignored, at
+ *  any depth, so that a repository nested in this one is not tracked,
+ *  and Makefile, proj2.iml and pom.xml at the top are ignored unless
+ *  re-included.
+ *
+ *  Patterns without wildcards, the common case, are looked up in hash
+ *  maps by name or by path; only the others are tried as regular
+ *  expressions, newest first, and only while they could still override
+ *  a literal match. */
+class Ignore {
+
+    /** The name of the file holding the patterns. */
+    static final String FILE_NAME = ".gitletignore";
+
+    /** Patterns in effect before those of the file. */
+    private static final String[] DEFAULTS = { "/Makefile", "/proj2.iml", "/pom.xml" };
+
+    /** One pattern, numbered by its position. */
+    private static class Rule {
+        final int number;
+        final boolean negated;
+        final boolean dirOnly;
+        /** Match against the whole path rather than the last name. */
+        final boolean anchored;
+        /** The compiled pattern, or null for a literal. */
+        final Pattern regex;
+
+        Rule(int number, boolean negated, boolean dirOnly, boolean anchored, Pattern regex) {
+            this.number = number;
+            this.negated = negated;
+            this.dirOnly = dirOnly;
+            this.anchored = anchored;
+            this.regex = regex;
+        }
+
+        boolean appliesTo(boolean isDir) {
+            return isDir || !dirOnly;
+        }
+    }
+
+    private static Ignore local;
+
+    private final List<Rule> rules = new ArrayList<>();
+    /** Literal rules matching a name at any depth, by that name. */
+    private final Map<String, List<Rule>> names = new HashMap<>();
+    /** Literal rules matching one path, by that path. */
+    private final Map<String, List<Rule>> paths = new HashMap<>();
+    /** The remaining rules, newest first. */
+    private final List<Rule> regexes = new ArrayList<>();
+
+    /** Returns the compiled patterns of the current working directory. */
+    static Ignore local() {
+        if (local == null) {
+            File file = Utils.join(Repository.CWD, FILE_NAME);
+            local = new Ignore(file.isFile() ? Utils.readContentsAsString(file) : "");
+        }
+        return local;
+    }
+
+    /** Compiles the default patterns followed by those in TEXT, one per
+     *  line. */
+    Ignore(String text) {
+        for (String line : DEFAULTS) {
+            compile(line);
+        }
+        for (String line : text.split("\r?\n")) {
+            compile(line);
+        }
+        regexes.sort((a, b) -> b.number - a.number);
+    }
+
+    /** Returns true iff the file or, if ISDIR, directory PATH, relative to
+     *  the working directory and separated by '/', is ignored. */
+    boolean isIgnored(String path, boolean isDir) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (name.equals(".gitlet") || ("/" + path).contains("/.gitlet/")) {
+            return true;
+        }
+        Rule best = newest(names.get(name), null, isDir);
+        best = newest(paths.get(path), best, isDir);
+        for (Rule rule : regexes) {
+            if (best != null && rule.number < best.number) {
+                break;
+            }
+            if (rule.appliesTo(isDir)
+                    && rule.regex.matcher(rule.anchored ? path : name).matches()) {
+                best = rule;
+                break;
+            }
+        }
+        return best != null && !best.negated;
+    }
+
+    /** Returns the newest of BEST and those of RULES that apply to a
+     *  directory if ISDIR, or a file otherwise. */
+    private static Rule newest(List<Rule> rules, Rule best, boolean isDir) {
+        if (rules != null) {
+            for (Rule rule : rules) {
+                if (rule.appliesTo(isDir) && (best == null || rule.number > best.number)) {
+                    best = rule;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Adds the rule of one LINE of a .gitletignore, if it has one. */
+    private void compile(String line) {
+        if (line.startsWith("#")) {
+            return;
+        }
+        line = trimTrailingSpaces(line);
+        boolean negated = line.startsWith("!");
+        if (negated) {
+            line = line.substring(1);
+        } else if (line.startsWith("\\!") || line.startsWith("\\#")) {
+            line = line.substring(1);
+        }
+        boolean dirOnly = line.endsWith("/");
+        if (dirOnly) {
+            line = line.substring(0, line.length() - 1);
+        }
+        boolean anchored = line.contains("/");
+        if (line.startsWith("/")) {
+            line = line.substring(1);
+        }
+        if (line.isEmpty()) {
+            return;
+        }
+
+        boolean literal = !line.matches(".*[*?\\[\\\\].*");
+        Rule rule = new Rule(rules.size(), negated, dirOnly, anchored,
+                literal ? null : Pattern.compile(toRegex(line)));
+        rules.add(rule);
+        if (!literal) {
+            regexes.add(rule);
+        } else if (anchored) {
+            paths.computeIfAbsent(line, k -> new ArrayList<>()).add(rule);
+        } else {
+            names.computeIfAbsent(line, k -> new ArrayList<>()).add(rule);
+        }
+    }
+
+    /** Returns LINE without its trailing spaces, unless they are escaped
+     *  with a backslash. */
+    private static String trimTrailingSpaces(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' '
+                && (end < 2 || line.charAt(end - 2) != '\\')) {
+            end -= 1;
+        }
+        return line.substring(0, end);
+    }
+
+    /** Returns a regular expression matching the paths GLOB matches. */
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int n = glob.length();
+        for (int i = 0; i < n; i += 1) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < n && glob.charAt(i + 1) == '*') {
+                        boolean atStart = i == 0 || glob.charAt(i - 1) == '/';
+                        if (atStart && i + 2 < n && glob.charAt(i + 2) == '/') {
+                            // "**/": any number of leading directories.
+                            regex.append("(?:.*/)?");
+                            i += 2;
+                        } else {
+                            regex.append(".*");
+                            i += 1;
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    int close = glob.indexOf(']', i + 2);
+                    if (close < 0) {
+                        regex.append("\\[");
+                        break;
+                    }
+                    String set = glob.substring(i + 1, close);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = close;
+                    break;
+                case '\\':
+                    if (i + 1 < n) {
+                        i += 1;
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                    }
+                    break;
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        regex.append(c);
+                    } else {
+                        regex.append('\\').append(c);
+                    }
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+/** A cache of the blob ids of working files, kept in .gitlet/index.  For
+ *  each path it records the modification time, size and inode the file
+ *  had when it was last hashed, so a file whose stat data has not changed
+ *  is trusted without being read again.
+ *
+ *  A file modified within the timestamp granularity of the moment it was
+ *  hashed could keep the same stat data, so, as in git, an entry whose
+ *  modification time is not older than the index file itself is "racy"
+ *  and is always hashed again.
+ *
+ *  Files that must be read are hashed in parallel, on the common
+ *  work-stealing pool; the entries themselves are only changed by the
+ *  calling thread. */
+class Index {
+
+    /** Stat data and blob id of one working file. */
+    private static class Entry {
+        final long mtime;
+        final long size;
+        final long inode;
+        final String blobId;
+
+        Entry(long mtime, long size, long inode, String blobId) {
+            this.mtime = mtime;
+            this.size = size;
+            this.inode = inode;
+            this.blobId = blobId;
+        }
+
+        boolean matches(Entry stat) {
+            return mtime == stat.mtime && size == stat.size && inode == stat.inode;
+        }
+    }
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /** Modification time of the index file when it was loaded, in
+     *  milliseconds; entries at least this new are not trusted. */
+    private long indexTime = Long.MIN_VALUE;
+    private boolean changed;
+
+    /** Returns the index of the current repository, which is empty if it
+     *  has none yet. */
+    static Index load() {
+        Index index = new Index();
+        File file = Repository.INDEX_FILE;
+        if (!file.isFile()) {
+            return index;
+        }
+        index.indexTime = file.lastModified();
+        Codec.Reader in = new Codec.Reader(Utils.readContents(file), 'i');
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String path = in.readPath();
+            Entry e = new Entry(in.readLong(), in.readLong(), in.readLong(), in.readId());
+            index.entries.put(path, e);
+        }
+        return index;
+    }
+
+    /** Writes this index back if any entry was added, changed or
+     *  dropped since it was loaded. */
+    void save() {
+        if (!changed) {
+            return;
+        }
+        Codec.Writer out = new Codec.Writer('i', 1);
+        out.writeLong(entries.size());
+        entries.forEach((path, e) -> out.writePath(path)
+                .writeLong(e.mtime).writeLong(e.size).writeLong(e.inode).writeId(e.blobId));
+        Utils.writeContents(Repository.INDEX_FILE, out.toByteArray());
+        changed = false;
+    }
+
+    /** Returns a map from each of PATHS to the blob id of that working
+     *  file, or to null if there is no such file, reading in parallel the
+     *  files whose entries cannot be trusted. */
+    Map<String, String> blobIds(Collection<String> paths) {
+        return scan(paths, (file, cached) -> cached != null ? cached : Blob.blobID(file));
+    }
+
+    /** Stores the working files PATHS in STORE, in parallel, and returns a
+     *  map from each path to its blob id.  Files whose trusted entries show
+     *  that STORE already has their blobs are not read. */
+    Map<String, String> write(ObjectStore store, Collection<String> paths) {
+        return scan(paths, (file, cached) -> {
+            if (cached != null && store.contains(Blob.TYPE, cached)) {
+                return cached;
+            }
+            return Blob.write(store, file);
+        });
+    }
+
+    /** Applies HASH to each of the working files PATHS that exist, in
+     *  parallel, passing it the file and its trusted blob id (or null), and
+     *  records and returns the resulting ids, null for missing files. */
+    private Map<String, String> scan(Collection<String> paths,
+                                     BiFunction<File, String, String> hash) {
+        List<String> list = new ArrayList<>(paths);
+        Entry[] found = new Entry[list.size()];
+        IntStream.range(0, found.length).parallel().forEach(i -> {
+            File file = Utils.join(Repository.CWD, list.get(i));
+            Entry stat = stat(file);
+            if (stat != null) {
+                String blobId = hash.apply(file, cached(list.get(i), stat));
+                found[i] = new Entry(stat.mtime, stat.size, stat.inode, blobId);
+            }
+        });
+        Map<String, String> result = new TreeMap<>();
+        for (int i = 0; i < found.length; i += 1) {
+            String path = list.get(i);
+            if (found[i] == null) {
+                if (entries.remove(path) != null) {
+                    changed = true;
+                }
+                result.put(path, null);
+            } else {
+                record(path, found[i], found[i].blobId);
+                result.put(path, found[i].blobId);
+            }
+        }
+        return result;
+    }
+
+    private String cached(String path, Entry stat) {
+        Entry cached = entries.get(path);
+        if (cached != null && cached.matches(stat) && cached.mtime < indexTime) {
+            return cached.blobId;
+        }
+        return null;
+    }
+
+    /** Records that working file PATH, just written or hashed, holds
+     *  blob BLOBID. */
+    void update(String path, String blobId) {
+        Entry stat = stat(Utils.join(Repository.CWD, path));
+        if (stat != null) {
+            record(path, stat, blobId);
+        }
+    }
+
+    /** Drops the entries of every path not in PATHS. */
+    void retain(Collection<String> paths) {
+        if (entries.keySet().retainAll(paths)) {
+            changed = true;
+        }
+    }
+
+    private void record(String path, Entry stat, String blobId) {
+        Entry old = entries.get(path);
+        if (old == null || !old.matches(stat) || !old.blobId.equals(blobId)) {
+            changed = true;
+        }
+        entries.put(path, new Entry(stat.mtime, stat.size, stat.inode, blobId));
+        if (stat.mtime >= indexTime) {
+            // Rewrite the index so its time moves past the entry's.
+            changed = true;
+        }
+    }
+
+    /** Returns the stat data of FILE with no blob id, or null if FILE is
+     *  not a regular file. */
+    private static Entry stat(File file) {
+        try {
+            Map<String, Object> attrs;
+            long inode = 0;
+            try {
+                attrs = Files.readAttributes(file.toPath(), "unix:ino,size,lastModifiedTime,isRegularFile");
+                inode = (Long) attrs.get("ino");
+            } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+                attrs = Files.readAttributes(file.toPath(), "size,lastModifiedTime,isRegularFile");
+            }
+            if (!(Boolean) attrs.get("isRegularFile")) {
+                return null;
+            }
+            long mtime = ((FileTime) attrs.get("lastModifiedTime")).toMillis();
+            return new Entry(mtime, (Long) attrs.get("size"), inode, null);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
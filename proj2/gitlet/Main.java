@@ -1,15 +1,21 @@
 package gitlet;
 
+import java.util.Arrays;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author TODO
  */
 public class Main {
 
+    /** True if the command was run with --debug, to print statistics. */
+    static boolean debug;
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
         try{
+            args = options(args);
             if(args.length == 0 || args[0].isBlank()){
                 throw new GitletException("Please enter a command.");
             }
@@ -24,7 +30,10 @@ public class Main {
                     Repository.init();
                     break;
                 case "add":
-                    Repository.add(args[1]);
+                    if (args.length < 2) {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                    Repository.add(Arrays.copyOfRange(args, 1, args.length));
                     break;
                 case "commit":
                     if(args.length < 2 || args[1].isBlank()){
@@ -42,7 +51,11 @@ public class Main {
                     Repository.globalLog();
                     break;
                 case "find":
-                    Repository.find(args[1]);
+                    if (args.length == 3 && args[1].equals("--grep")) {
+                        Repository.findMatching(args[2]);
+                    } else {
+                        Repository.find(args[1]);
+                    }
                     break;
                 case "status":
                     Repository.status();
@@ -79,8 +92,18 @@ public class Main {
                 case "merge":
                     Repository.merge(args[1]);
                     break;
+                case "merge-base":
+                    if (args.length != 3) {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                    Repository.mergeBase(args[1], args[2]);
+                    break;
                 case "add-remote":
-                    Repository.addRemote(args[1], args[2]);
+                    if (args.length == 4 && args[1].equals("--shared")) {
+                        Repository.addRemote(args[2], args[3], true);
+                    } else {
+                        Repository.addRemote(args[1], args[2], false);
+                    }
                     break;
                 case "rm-remote":
                     Repository.rmRemote(args[1]);
@@ -94,11 +117,44 @@ public class Main {
                 case "pull":
                     Repository.pull(args[1], args[2]);
                     break;
+                case "repack":
+                    Repository.repack();
+                    break;
+                case "migrate":
+                    Repository.migrate();
+                    break;
+                case "storage":
+                    Repository.storage();
+                    break;
                 default:
                     throw new GitletException("No command with that name exists.");
             }
         }catch(GitletException e){
             System.out.println(e.getMessage());
+        }finally{
+            if (debug && Repository.GITLET_DIR.isDirectory()) {
+                System.err.print(ObjectStore.local().cache().stats());
+            }
+        }
+    }
+
+    /** Sets the options at the start of ARGS and returns the rest:
+     *    --debug            print statistics to the standard error;
+     *    --transfer=MODE    copy objects for push and fetch as MODE, one
+     *                       of link (the default), copy or stream. */
+    private static String[] options(String[] args) {
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            String option = args[first];
+            if (option.equals("--debug")) {
+                debug = true;
+            } else if (option.startsWith("--transfer=")) {
+                ObjectStore.copyMode = ObjectStore.CopyMode.parse(option.substring("--transfer=".length()));
+            } else {
+                break;
+            }
+            first += 1;
         }
+        return Arrays.copyOfRange(args, first, args.length);
     }
 }
@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A least-recently-used cache of the decoded objects of one ObjectStore
+ *  (commits, trees and blob contents), bounded by an estimate of the bytes
+ *  they take up, so that one command reading the same object many times
+ *  decodes it once.  Objects are immutable once stored, so a cached copy
+ *  is never stale.  Hits and misses are counted by type for --debug.  It
+ *  may be shared by the threads of a parallel checkout. */
+class ObjectCache {
+
+    /** Default upper bound on the bytes held. */
+    static final long LIMIT = 64L << 20;
+
+    /** A cached object and its estimated size. */
+    private static class Entry {
+        final Object value;
+        final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long limit;
+    private long size;
+    /** Hits and misses by type. */
+    private final Map<String, long[]> counts = new TreeMap<>();
+
+    ObjectCache(long limit) {
+        this.limit = limit;
+    }
+
+    /** Returns the cached object ID of TYPE, or null. */
+    synchronized Object get(String type, String id) {
+        Entry e = entries.get(key(type, id));
+        long[] count = counts.computeIfAbsent(type, k -> new long[2]);
+        count[e == null ? 1 : 0] += 1;
+        return e == null ? null : e.value;
+    }
+
+    /** Caches VALUE as object ID of TYPE, estimated at BYTES bytes, and
+     *  evicts the least recently used objects beyond the limit.  Objects
+     *  larger than a quarter of the limit are not cached. */
+    synchronized void put(String type, String id, Object value, long bytes) {
+        if (bytes > limit / 4) {
+            Entry old = entries.remove(key(type, id));
+            if (old != null) {
+                size -= old.bytes;
+            }
+            return;
+        }
+        Entry old = entries.put(key(type, id), new Entry(value, bytes));
+        if (old != null) {
+            size -= old.bytes;
+        }
+        size += bytes;
+        Iterator<Entry> lru = entries.values().iterator();
+        while (size > limit && lru.hasNext()) {
+            size -= lru.next().bytes;
+            lru.remove();
+        }
+    }
+
+    /** Updates the estimated size of object ID of TYPE to BYTES if it is
+     *  cached as VALUE, for objects that grow after they are loaded. */
+    synchronized void resize(String type, String id, Object value, long bytes) {
+        Entry e = entries.get(key(type, id));
+        if (e != null && e.value == value) {
+            put(type, id, value, bytes);
+        }
+    }
+
+    /** Returns the hit and miss counts and the size of this cache, one
+     *  line per type. */
+    synchronized String stats() {
+        StringBuilder out = new StringBuilder();
+        counts.forEach((type, count) -> out.append("cache ").append(type).append(": ")
+                .append(count[0]).append(" hits, ").append(count[1]).append(" misses\n"));
+        out.append("cache size: ").append(size).append(" of ").append(limit).append(" bytes\n");
+        return out.toString();
+    }
+
+    private static String key(String type, String id) {
+        return type + " " + id;
+    }
+}
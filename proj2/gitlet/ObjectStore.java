@@ -0,0 +1,746 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The object database of one gitlet repository.  Objects are written
+ *  loose, one file per object under objects/TYPE/AB/CDEF..., where AB are
+ *  the first two hex digits of the id, so that no directory grows past a
+ *  few thousand entries; they may later be moved into packs by repack.
+ *  looseFile is the one place that knows this layout.  Reads look at
+ *  loose objects first and then at every pack, so callers never need to
+ *  know where an object lives.  Blobs stored as deltas in a pack are
+ *  rebuilt on read.
+ *
+ *  A repository may also read the objects of others, its alternates, so
+ *  that related repositories on one machine share a single copy.  They
+ *  are tried after the store's own objects, and an object one of them
+ *  has is never written again here, except for commits: listing a
+ *  store, as the commit log and indexes are rebuilt from, gives only
+ *  its own objects. */
+class ObjectStore {
+
+    /** The longest chain of deltas repack will build. */
+    static final int MAX_DELTA_DEPTH = 50;
+    /** Blobs larger than this many bytes are never deltified, since both
+     *  building and applying a delta hold the whole base in memory. */
+    static final int MAX_DELTA_SIZE = 16 << 20;
+
+    /** How copyTo copies loose objects from one store to another.
+     *  Objects are never changed once written, so two stores on one file
+     *  system may share their files. */
+    enum CopyMode {
+        /** Hard-link the object's file, or COPY it where the two stores
+         *  cannot share files. */
+        LINK,
+        /** Copy the file's bytes within the operating system, with
+         *  FileChannel.transferTo. */
+        COPY,
+        /** Read the object and write it again, as for packed objects. */
+        STREAM;
+
+        /** Returns the mode called NAME, in any case. */
+        static CopyMode parse(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("Unknown transfer mode: %s", name);
+            }
+        }
+    }
+
+    /** The way objects are copied between stores. */
+    static CopyMode copyMode = CopyMode.LINK;
+
+    private static ObjectStore local;
+
+    private final File gitletDir;
+    private final File objectsDir;
+    private final File packDir;
+    private List<Pack> packs;
+    /** The stores named by the alternates of the repository's config,
+     *  read lazily, which are empty for an alternate itself. */
+    private List<ObjectStore> alternates;
+    private final ObjectCache cache = new ObjectCache(ObjectCache.LIMIT);
+    /** Number and total size of the objects copied into this store by
+     *  copyTo, by type. */
+    private final Map<String, long[]> received = new TreeMap<>();
+    /** Number of the objects received that were hard-linked. */
+    private long linked;
+    /** True once a hard link into this store has failed, after which
+     *  objects are copied without trying again. */
+    private boolean cannotLink;
+    private boolean layoutChecked;
+    /** True for the store of another repository that is only read, whose
+     *  files are never changed: its layout is not migrated, and writing
+     *  an object or repacking throws. */
+    private final boolean readOnly;
+    /** True if the loose objects are kept in one directory per type, as
+     *  by older gitlets, in a store that may not be changed to shards. */
+    private boolean flat;
+
+    /** The file whose presence means the loose objects are sharded; older
+     *  gitlets kept them all in one directory per type. */
+    private static final String SHARDED_MARKER = "sharded";
+
+    ObjectStore(File gitletDir) {
+        this(gitletDir, false);
+    }
+
+    /** The store of the repository in GITLETDIR, which is never written
+     *  if READONLY. */
+    ObjectStore(File gitletDir, boolean readOnly) {
+        this.readOnly = readOnly;
+        this.gitletDir = gitletDir;
+        this.objectsDir = Utils.join(gitletDir, "objects");
+        this.packDir = Utils.join(objectsDir, "pack");
+    }
+
+    /** Returns the stores whose objects this one reads when it does not
+     *  hold them itself, as listed in the repository's config.  They are
+     *  only ever read, and their own alternates are not consulted, since
+     *  sharing a repository copies its alternates into the config. */
+    synchronized List<ObjectStore> alternates() {
+        if (alternates == null) {
+            alternates = new ArrayList<>();
+            for (String dir : Config.load(gitletDir).alternates) {
+                File objects = new File(dir);
+                if (objects.isDirectory()) {
+                    ObjectStore alternate = new ObjectStore(objects.getParentFile(), true);
+                    alternate.alternates = Collections.emptyList();
+                    alternates.add(alternate);
+                }
+            }
+        }
+        return alternates;
+    }
+
+    /** Returns the object store of the repository in the current
+     *  working directory. */
+    static ObjectStore local() {
+        if (local == null) {
+            local = new ObjectStore(Repository.GITLET_DIR);
+        }
+        return local;
+    }
+
+    /** Returns the cache of objects decoded from this store. */
+    ObjectCache cache() {
+        return cache;
+    }
+
+    /** Returns the file that holds loose object ID of TYPE. */
+    File looseFile(String type, String id) {
+        checkLayout();
+        if (flat) {
+            return Utils.join(objectsDir, type, id);
+        }
+        return Utils.join(objectsDir, type, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Returns the ids of the loose objects of TYPE, in no particular
+     *  order. */
+    List<String> looseIds(String type) {
+        checkLayout();
+        List<String> ids = new ArrayList<>();
+        if (flat) {
+            List<String> names = Utils.plainFilenamesIn(Utils.join(objectsDir, type));
+            if (names != null) {
+                for (String name : names) {
+                    if (name.length() == Utils.UID_LENGTH) {
+                        ids.add(name);
+                    }
+                }
+            }
+            return ids;
+        }
+        File[] shards = Utils.join(objectsDir, type).listFiles(File::isDirectory);
+        if (shards == null) {
+            return ids;
+        }
+        for (File shard : shards) {
+            List<String> names = Utils.plainFilenamesIn(shard);
+            if (names != null) {
+                for (String name : names) {
+                    ids.add(shard.getName() + name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Moves the loose objects of a repository made by an older gitlet
+     *  into their shards, once, or, if the store is read-only, reads them
+     *  where they are. */
+    private synchronized void checkLayout() {
+        if (layoutChecked) {
+            return;
+        }
+        layoutChecked = true;
+        File marker = Utils.join(objectsDir, SHARDED_MARKER);
+        if (marker.exists() || !objectsDir.isDirectory()) {
+            return;
+        }
+        if (readOnly) {
+            flat = true;
+            return;
+        }
+        for (String type : Pack.TYPES) {
+            List<String> flat = Utils.plainFilenamesIn(Utils.join(objectsDir, type));
+            if (flat == null) {
+                continue;
+            }
+            for (String id : flat) {
+                if (id.length() != Utils.UID_LENGTH) {
+                    continue;
+                }
+                File to = looseFile(type, id);
+                to.getParentFile().mkdirs();
+                try {
+                    Files.move(Utils.join(objectsDir, type, id).toPath(), to.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        Utils.writeContents(marker, "");
+    }
+
+    /** Throws if this store is read-only. */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalArgumentException("read-only object store " + objectsDir);
+        }
+    }
+
+    /** Returns true iff object ID of TYPE is stored loose or packed, here
+     *  or in an alternate. */
+    boolean contains(String type, String id) {
+        if (holds(type, id)) {
+            return true;
+        }
+        for (ObjectStore alternate : alternates()) {
+            if (alternate.holds(type, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true iff object ID of TYPE is stored loose or packed in
+     *  this store itself. */
+    boolean holds(String type, String id) {
+        if (looseFile(type, id).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(type, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the first alternate holding object ID of TYPE, or null. */
+    private ObjectStore alternate(String type, String id) {
+        for (ObjectStore alternate : alternates()) {
+            if (alternate.holds(type, id)) {
+                return alternate;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the raw bytes of object ID of TYPE, or null if it does not
+     *  exist. */
+    byte[] read(String type, String id) {
+        File loose = looseFile(type, id);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        for (Pack pack : packs()) {
+            if (pack.deltaBase(type, id) != null) {
+                throw new IllegalArgumentException("stored as a delta: " + id);
+            }
+            byte[] bytes = pack.read(type, id);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        ObjectStore alternate = alternate(type, id);
+        return alternate == null ? null : alternate.read(type, id);
+    }
+
+    /** Returns a stream of the raw bytes of object ID of TYPE, or null if
+     *  it does not exist.  An object stored as a delta has no raw bytes
+     *  of its own: the contents of such a blob are read with Blob.open,
+     *  which rebuilds them without compressing them again. */
+    InputStream open(String type, String id) throws IOException {
+        File loose = looseFile(type, id);
+        if (loose.isFile()) {
+            return new FileInputStream(loose);
+        }
+        for (Pack pack : packs()) {
+            if (pack.deltaBase(type, id) != null) {
+                throw new IllegalArgumentException("stored as a delta: " + id);
+            }
+            InputStream in = pack.open(type, id);
+            if (in != null) {
+                return in;
+            }
+        }
+        ObjectStore alternate = alternate(type, id);
+        return alternate == null ? null : alternate.open(type, id);
+    }
+
+    /** Returns the id of the base of object ID of TYPE if it is stored as a
+     *  delta, and null otherwise. */
+    String deltaBase(String type, String id) {
+        if (looseFile(type, id).isFile()) {
+            return null;
+        }
+        for (Pack pack : packs()) {
+            String base = pack.deltaBase(type, id);
+            if (base != null) {
+                return base;
+            }
+        }
+        if (holds(type, id)) {
+            return null;
+        }
+        ObjectStore alternate = alternate(type, id);
+        return alternate == null ? null : alternate.deltaBase(type, id);
+    }
+
+    /** Returns the Delta instructions of object ID of TYPE, which must be
+     *  stored as a delta. */
+    byte[] readDelta(String type, String id) {
+        for (Pack pack : packs()) {
+            if (pack.deltaBase(type, id) != null) {
+                try (InputStream raw = pack.open(type, id);
+                     InputStream in = new InflaterInputStream(raw)) {
+                    raw.skipNBytes(Utils.UID_LENGTH / 2);
+                    return in.readAllBytes();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        ObjectStore alternate = alternate(type, id);
+        if (alternate != null) {
+            return alternate.readDelta(type, id);
+        }
+        throw new IllegalArgumentException("no delta " + id);
+    }
+
+    /** A loose object being written.  Its bytes go to a temporary file in
+     *  the objects directory, which install then renames to the object's
+     *  file in one step, so readers never see a partly written object and
+     *  the id may be computed while the bytes are written. */
+    class NewObject extends OutputStream {
+        private final File temp;
+        private final OutputStream out;
+
+        private NewObject() throws IOException {
+            checkWritable();
+            objectsDir.mkdirs();
+            temp = File.createTempFile("tmp-", null, objectsDir);
+            out = new BufferedOutputStream(Files.newOutputStream(temp.toPath()), Blob.BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        /** Makes the bytes of FILE, copied within the operating system
+         *  where it can, this object's only bytes, and returns their
+         *  number. */
+        long copyFrom(File file) throws IOException {
+            out.close();
+            try (FileChannel src = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                 FileChannel dst = FileChannel.open(temp.toPath(),
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = src.size();
+                long done = 0;
+                while (done < size) {
+                    long n = src.transferTo(done, size - done, dst);
+                    if (n <= 0) {
+                        throw new IOException("short copy of " + file);
+                    }
+                    done += n;
+                }
+                return size;
+            }
+        }
+
+        /** Makes the bytes written so far object ID of TYPE, replacing any
+         *  loose copy of it. */
+        void install(String type, String id) {
+            File loose = looseFile(type, id);
+            loose.getParentFile().mkdirs();
+            try {
+                out.close();
+                Files.move(temp.toPath(), loose.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Throws away the bytes written, unless they were installed. */
+        void discard() {
+            try {
+                out.close();
+            } catch (IOException excp) {
+                // The file is deleted regardless.
+            }
+            temp.delete();
+        }
+    }
+
+    /** Returns a new loose object to be written and then installed. */
+    NewObject create() {
+        try {
+            return new NewObject();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores BYTES as loose object ID of TYPE unless it already
+     *  exists. */
+    void write(String type, String id, byte[] bytes) {
+        checkWritable();
+        if (contains(type, id)) {
+            return;
+        }
+        replace(type, id, bytes);
+    }
+
+    /** Stores BYTES as loose object ID of TYPE, taking precedence over any
+     *  packed copy of it. */
+    void replace(String type, String id, byte[] bytes) {
+        NewObject object = create();
+        try {
+            object.write(bytes);
+            object.install(type, id);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            object.discard();
+        }
+    }
+
+    /** Copies object ID of TYPE into DEST unless DEST already has it,
+     *  as copyMode says for loose objects.  A commit is copied even if
+     *  one of DEST's alternates has it, since the commits a repository
+     *  has fetched are those it holds itself. */
+    void copyTo(ObjectStore dest, String type, String id) {
+        if (type.equals(Commit.TYPE) ? dest.holds(type, id) : dest.contains(type, id)) {
+            return;
+        }
+        File loose = looseFile(type, id);
+        if (copyMode == CopyMode.LINK && loose.isFile() && dest.link(type, id, loose)) {
+            dest.linked += 1;
+            dest.count(type, loose.length());
+            return;
+        }
+        if (!loose.isFile() && deltaBase(type, id) != null) {
+            // Rebuilt here and compressed once, straight into DEST.
+            Blob.load(this, id).saveTo(dest);
+            dest.count(type, dest.looseFile(type, id).length());
+            return;
+        }
+        NewObject object = dest.create();
+        try {
+            long bytes;
+            if (copyMode != CopyMode.STREAM && loose.isFile()) {
+                bytes = object.copyFrom(loose);
+            } else {
+                try (InputStream in = open(type, id)) {
+                    if (in == null) {
+                        return;
+                    }
+                    bytes = in.transferTo(object);
+                }
+            }
+            object.install(type, id);
+            dest.count(type, bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            object.discard();
+        }
+    }
+
+    /** Makes FILE, the loose object ID of TYPE in another store, the same
+     *  object in this one by hard-linking it.  Returns false if the two
+     *  stores cannot share the file, as when they are on different file
+     *  systems. */
+    private boolean link(String type, String id, File file) {
+        checkWritable();
+        if (cannotLink) {
+            return false;
+        }
+        File loose = looseFile(type, id);
+        loose.getParentFile().mkdirs();
+        try {
+            Files.createLink(loose.toPath(), file.toPath());
+            return true;
+        } catch (FileAlreadyExistsException excp) {
+            // Written meanwhile: the contents are the same.
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException excp) {
+            cannotLink = true;
+            return false;
+        }
+    }
+
+    /** Records an object of TYPE and BYTES bytes received by copyTo. */
+    private void count(String type, long bytes) {
+        long[] count = received.computeIfAbsent(type, k -> new long[2]);
+        count[0] += 1;
+        count[1] += bytes;
+    }
+
+    /** Returns the number and total size of the objects of TYPE copied
+     *  into this store so far. */
+    long[] received(String type) {
+        return received.getOrDefault(type, new long[2]).clone();
+    }
+
+    /** Returns how many of the objects copied into this store so far were
+     *  hard-linked rather than copied. */
+    long linked() {
+        return linked;
+    }
+
+    /** Returns the sorted ids of the objects of TYPE this store holds
+     *  itself, loose or packed.  The alternates' objects are left out:
+     *  they are only read, and what is rebuilt, rewritten or repacked
+     *  from this list must describe this repository alone. */
+    List<String> list(String type) {
+        TreeSet<String> ids = new TreeSet<>(looseIds(type));
+        for (Pack pack : packs()) {
+            ids.addAll(pack.ids(type));
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Returns the number of bytes the objects of this store take up on
+     *  disk, loose and packed, not counting its alternates. */
+    long diskSize() {
+        long size = 0;
+        for (String type : Pack.TYPES) {
+            for (String id : looseIds(type)) {
+                size += looseFile(type, id).length();
+            }
+        }
+        for (Pack pack : packs()) {
+            size += pack.getDataFile().length() + pack.getIndexFile().length();
+        }
+        return size;
+    }
+
+    /** Returns the packs of this store, opening their indexes lazily. */
+    synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        packs.add(new Pack(Utils.join(packDir, name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Moves every loose object and every existing pack into one new pack,
+     *  then removes the loose files and old packs it replaces. */
+    void repack() {
+        checkWritable();
+        TreeSet<Pack.Entry> entries = new TreeSet<>();
+        List<File> looseFiles = new ArrayList<>();
+        for (String type : Pack.TYPES) {
+            for (String id : looseIds(type)) {
+                entries.add(new Pack.Entry(type, id));
+                looseFiles.add(looseFile(type, id));
+            }
+            for (Pack pack : packs()) {
+                for (String id : pack.ids(type)) {
+                    entries.add(new Pack.Entry(type, id));
+                }
+            }
+        }
+        if (entries.isEmpty() || (looseFiles.isEmpty() && packs().size() == 1)) {
+            return;
+        }
+
+        Map<String, Pack.Entry> blobs = new HashMap<>();
+        for (Pack.Entry e : entries) {
+            if (e.type.equals(Blob.TYPE)) {
+                blobs.put(e.id, e);
+            }
+        }
+        selectDeltas(blobs);
+
+        List<Pack> old = new ArrayList<>(packs());
+        Pack pack = Pack.write(packDir, new ArrayList<>(entries), this);
+        for (Pack p : old) {
+            p.close();
+            if (!p.getIndexFile().equals(pack.getIndexFile())) {
+                p.getIndexFile().delete();
+                p.getDataFile().delete();
+            }
+        }
+        for (File file : looseFiles) {
+            file.delete();
+            file.getParentFile().delete();
+        }
+        packs = new ArrayList<>(Collections.singletonList(pack));
+    }
+
+    /** Chooses which of BLOBS to store as deltas.  The versions a path takes
+     *  are those the commits of this store introduce, found by comparing
+     *  each commit's tree with its first parent's, which skips unchanged
+     *  subtrees.  They are ordered newest first, and each version is
+     *  tried as a delta against the next newer one, so recent versions stay
+     *  whole and cheap to read.  A delta is kept only if it is less than
+     *  half the size of its target, and chains are cut at MAX_DELTA_DEPTH. */
+    private void selectDeltas(Map<String, Pack.Entry> blobs) {
+        List<Commit> commits = new ArrayList<>();
+        for (String id : list(Commit.TYPE)) {
+            commits.add(Commit.load(this, id));
+        }
+        commits.sort(Comparator.comparing(Commit::getDate).reversed());
+        Map<String, Set<String>> histories = new TreeMap<>();
+        for (Commit commit : commits) {
+            List<String> parents = commit.getParents();
+            String parentTree = parents.isEmpty() ? null
+                    : Commit.load(this, parents.get(0)).getTree();
+            Tree.diff(this, parentTree, commit.getTree(), (path, oldId, newId) -> {
+                if (newId != null && blobs.containsKey(newId)) {
+                    histories.computeIfAbsent(path, k -> new LinkedHashSet<>()).add(newId);
+                }
+            });
+        }
+
+        Map<String, String> bases = new HashMap<>();
+        for (Set<String> history : histories.values()) {
+            String newer = null;
+            byte[] newerContent = null;
+            for (String id : history) {
+                byte[] content = readLimited(id);
+                if (newerContent != null && content != null && !bases.containsKey(id)
+                        && !reaches(bases, newer, id)) {
+                    byte[] delta = Delta.create(newerContent, content);
+                    if (delta.length < content.length / 2) {
+                        bases.put(id, newer);
+                        blobs.get(id).base = newer;
+                        blobs.get(id).delta = deflate(delta);
+                    }
+                }
+                newer = id;
+                newerContent = content;
+            }
+        }
+
+        Map<String, Integer> depths = new HashMap<>();
+        for (String id : new ArrayList<>(bases.keySet())) {
+            List<String> chain = new ArrayList<>();
+            String cur = id;
+            while (cur != null && !depths.containsKey(cur)) {
+                chain.add(cur);
+                cur = bases.get(cur);
+            }
+            int depth = cur == null ? 0 : depths.get(cur);
+            for (int i = chain.size() - 1; i >= 0; i -= 1) {
+                String node = chain.get(i);
+                if (!bases.containsKey(node)) {
+                    depth = 0;
+                } else if (depth + 1 > MAX_DELTA_DEPTH) {
+                    bases.remove(node);
+                    blobs.get(node).base = null;
+                    blobs.get(node).delta = null;
+                    depth = 0;
+                } else {
+                    depth += 1;
+                }
+                depths.put(node, depth);
+            }
+        }
+    }
+
+    /** Returns true iff following BASES from FROM leads to TO. */
+    private static boolean reaches(Map<String, String> bases, String from, String to) {
+        for (String cur = from; cur != null; cur = bases.get(cur)) {
+            if (cur.equals(to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the contents of blob ID, or null if they are larger than
+     *  MAX_DELTA_SIZE or it is stored as chunks, which already share their
+     *  data with other versions. */
+    private byte[] readLimited(String id) {
+        if (Blob.manifest(this, id) != null) {
+            return null;
+        }
+        try (InputStream in = Blob.load(this, id).open()) {
+            byte[] content = in.readNBytes(MAX_DELTA_SIZE + 1);
+            return content.length > MAX_DELTA_SIZE ? null : content;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    static byte[] deflate(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,405 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A read-only pack of gitlet objects: one data file holding the raw
+ *  bytes of every object back to back, plus an index file that maps
+ *  object ids to their offset and length in the data file.
+ *
+ *  The index starts with a 256-entry fan-out table (the number of ids whose
+ *  first byte is at most B), followed by the 20-byte ids and then
+ *  parallel arrays of types, offsets and lengths, so a lookup is a binary
+ *  search within one fan-out bucket of a memory-mapped file.  Objects are
+ *  sorted by id and then by type, since the same id may name a chunk and
+ *  a blob with the same bytes, and both are kept.  Blobs may be
+ *  stored as deltas against other blobs of the same pack.  Version 1
+ *  indexes stored lengths as ints; version 2 stores them as longs so that
+ *  objects larger than 2GB can be packed. */
+class Pack {
+
+    static final int PACK_MAGIC = 0x474c504b;   // "GLPK"
+    static final int INDEX_MAGIC = 0x474c4958;  // "GLIX"
+    static final int VERSION = 2;
+
+    private static final int ID_BYTES = 20;
+    private static final int HEADER_BYTES = 12;
+    private static final int FANOUT_BYTES = 256 * 4;
+
+    /** The object types a pack may hold, indexed by their type byte. */
+    static final String[] TYPES = { "commit", "blob", "tree", "chunk" };
+    /** Set in the type byte of an object stored as a delta.  Its data is
+     *  the 20-byte id of its base followed by the deflated instructions
+     *  of a Delta against the contents of that base. */
+    static final int DELTA = 0x80;
+
+    private final File dataFile;
+    private final File indexFile;
+    private MappedByteBuffer index;
+    private FileChannel data;
+    private int count;
+    private int version;
+
+    Pack(File indexFile) {
+        this.indexFile = indexFile;
+        String name = indexFile.getName();
+        this.dataFile = new File(indexFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+    }
+
+    File getDataFile() {
+        return dataFile;
+    }
+
+    File getIndexFile() {
+        return indexFile;
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        openIndex();
+        return count;
+    }
+
+    /** Returns true iff this pack holds object ID of TYPE. */
+    boolean contains(String type, String id) {
+        return find(type, id) >= 0;
+    }
+
+    /** Returns the raw bytes of object ID of TYPE, or null if this pack
+     *  does not hold it. */
+    byte[] read(String type, String id) {
+        int pos = find(type, id);
+        if (pos < 0) {
+            return null;
+        }
+        long length = lengthAt(pos);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("object too large to read: " + id);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) length);
+        long offset = index.getLong(offsetsStart() + pos * 8);
+        try {
+            openData();
+            while (buf.hasRemaining()) {
+                if (data.read(buf, offset + buf.position()) < 0) {
+                    throw new IOException("truncated pack " + dataFile);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return buf.array();
+    }
+
+    /** Returns the id of the base of object ID of TYPE if this pack
+     *  stores it as a delta, and null otherwise. */
+    String deltaBase(String type, String id) {
+        int pos = find(type, id);
+        if (pos < 0 || (index.get(typesStart() + pos) & DELTA) == 0) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(ID_BYTES);
+        long offset = index.getLong(offsetsStart() + pos * 8);
+        try {
+            openData();
+            while (buf.hasRemaining()) {
+                if (data.read(buf, offset + buf.position()) < 0) {
+                    throw new IOException("truncated pack " + dataFile);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(buf.array());
+    }
+
+    /** Returns a stream of the raw bytes of object ID of TYPE, or null if
+     *  this pack does not hold it. */
+    InputStream open(String type, String id) throws IOException {
+        int pos = find(type, id);
+        if (pos < 0) {
+            return null;
+        }
+        openData();
+        return new RangeInputStream(data, index.getLong(offsetsStart() + pos * 8),
+                lengthAt(pos));
+    }
+
+    /** Returns the ids of all objects of TYPE in this pack, in sorted
+     *  order. */
+    List<String> ids(String type) {
+        openIndex();
+        List<String> result = new ArrayList<>();
+        byte[] id = new byte[ID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            if (typeAt(i).equals(type)) {
+                index.get(HEADER_BYTES + FANOUT_BYTES + i * ID_BYTES, id);
+                result.add(Utils.toHex(id));
+            }
+        }
+        return result;
+    }
+
+    /** Releases the open files of this pack. */
+    void close() {
+        try {
+            if (data != null) {
+                data.close();
+            }
+        } catch (IOException ignored) { }
+        data = null;
+        index = null;
+    }
+
+    /** Returns the position of object ID of TYPE in the sorted table, or
+     *  -1. */
+    private int find(String type, String id) {
+        openIndex();
+        if (!Utils.isUid(id)) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        int typeByte = typeByte(type);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(HEADER_BYTES + (first - 1) * 4);
+        int hi = index.getInt(HEADER_BYTES + first * 4) - 1;
+        byte[] probe = new byte[ID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(HEADER_BYTES + FANOUT_BYTES + mid * ID_BYTES, probe);
+            int cmp = compareIds(probe, key);
+            if (cmp == 0) {
+                cmp = (index.get(typesStart() + mid) & ~DELTA & 0xff) - typeByte;
+            }
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int typesStart() {
+        return HEADER_BYTES + FANOUT_BYTES + count * ID_BYTES;
+    }
+
+    private int offsetsStart() {
+        return typesStart() + count;
+    }
+
+    private int lengthsStart() {
+        return offsetsStart() + count * 8;
+    }
+
+    private String typeAt(int pos) {
+        return TYPES[index.get(typesStart() + pos) & ~DELTA & 0xff];
+    }
+
+    private long lengthAt(int pos) {
+        if (version == 1) {
+            return index.getInt(lengthsStart() + pos * 4);
+        }
+        return index.getLong(lengthsStart() + pos * 8);
+    }
+
+    private synchronized void openIndex() {
+        if (index != null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        version = index.getInt(4);
+        if (index.getInt(0) != INDEX_MAGIC || version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("bad pack index " + indexFile);
+        }
+        count = index.getInt(8);
+    }
+
+    private synchronized void openData() throws IOException {
+        if (data == null) {
+            data = FileChannel.open(dataFile.toPath());
+        }
+    }
+
+    static int compareIds(byte[] a, byte[] b) {
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Writes the objects in ENTRIES, whose bytes are read from STORE, into
+     *  a new pack in DIR and returns it.  ENTRIES must be sorted, by id and
+     *  then type, and free of duplicates.  The data file is renamed into place before the
+     *  index, so a pack is never visible without all of its data. */
+    static Pack write(File dir, List<Entry> entries, ObjectStore store) {
+        dir.mkdirs();
+        int n = entries.size();
+        long[] offsets = new long[n];
+        long[] lengths = new long[n];
+        List<Object> idList = new ArrayList<>();
+        for (Entry e : entries) {
+            idList.add(e.id);
+        }
+        String name = "pack-" + Utils.sha1(idList);
+        File tmpData = new File(dir, name + ".pack.tmp");
+        File tmpIndex = new File(dir, name + ".idx.tmp");
+        try {
+            try (RandomAccessFile out = new RandomAccessFile(tmpData, "rw")) {
+                out.setLength(0);
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(n);
+                OutputStream sink = new BufferedOutputStream(
+                        Channels.newOutputStream(out.getChannel()), 1 << 16);
+                long offset = out.getFilePointer();
+                for (int i = 0; i < n; i += 1) {
+                    Entry e = entries.get(i);
+                    offsets[i] = offset;
+                    if (e.delta != null) {
+                        sink.write(Utils.fromHex(e.base));
+                        sink.write(e.delta);
+                        lengths[i] = ID_BYTES + e.delta.length;
+                    } else if (store.deltaBase(e.type, e.id) != null) {
+                        // A delta no longer: store its rebuilt contents.
+                        byte[] whole = ObjectStore.deflate(Blob.load(store, e.id).getContent());
+                        sink.write(whole);
+                        lengths[i] = whole.length;
+                    } else {
+                        try (InputStream in = store.open(e.type, e.id)) {
+                            lengths[i] = in.transferTo(sink);
+                        }
+                    }
+                    offset += lengths[i];
+                }
+                sink.flush();
+                out.getFD().sync();
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpIndex.toPath())))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(n);
+                int[] fanout = new int[256];
+                for (Entry e : entries) {
+                    fanout[Integer.parseInt(e.id.substring(0, 2), 16)] += 1;
+                }
+                int total = 0;
+                for (int b = 0; b < 256; b += 1) {
+                    total += fanout[b];
+                    out.writeInt(total);
+                }
+                for (Entry e : entries) {
+                    out.write(Utils.fromHex(e.id));
+                }
+                for (Entry e : entries) {
+                    out.writeByte(typeByte(e.type) | (e.delta != null ? DELTA : 0));
+                }
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                for (long length : lengths) {
+                    out.writeLong(length);
+                }
+            }
+            File dataFile = new File(dir, name + ".pack");
+            File indexFile = new File(dir, name + ".idx");
+            Files.move(tmpData.toPath(), dataFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpIndex.toPath(), indexFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Pack(indexFile);
+        } catch (IOException excp) {
+            tmpData.delete();
+            tmpIndex.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static int typeByte(String type) {
+        for (int i = 0; i < TYPES.length; i += 1) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("cannot pack object of type " + type);
+    }
+
+    /** A stream over LENGTH bytes of a file channel starting at OFFSET.
+     *  It uses positional reads, so many may share one channel. */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        RangeInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                throw new IOException("truncated pack");
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+    }
+
+    /** An object to be written into a pack, either whole or, if DELTA is
+     *  set, as the deflated delta DELTA against object BASE. */
+    static class Entry implements Comparable<Entry> {
+        final String type;
+        final String id;
+        String base;
+        byte[] delta;
+
+        Entry(String type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = id.compareTo(other.id);
+            return cmp != 0 ? cmp : typeByte(type) - typeByte(other.type);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Commit.getFullCommitId;
 import static gitlet.Utils.*;
@@ -35,6 +39,7 @@ public class Repository {
     public static final File COMMIT_DIR = join(OBJECTS_DIR, "commit");
     public static final File BLOB_DIR = join(OBJECTS_DIR, "blob");
     public static final File STAGE_FILE = join(GITLET_DIR, "stage");
+    public static final File INDEX_FILE = join(GITLET_DIR, "index");
     public static final File HEAD_FILE = join(GITLET_DIR, "HEAD");
     public static final File CONFIG_FILE = join(GITLET_DIR, "config");
     public static final File REMOTE_DIR = join(REFS_DIR, "remotes");
@@ -56,36 +61,50 @@ public class Repository {
 
         Commit initialCommit = new Commit(new Date(0), "initial commit", new TreeMap<>(), new ArrayList<>());
         initialCommit.save();
+        recordCommit(initialCommit);
 
         forwardBranch("master", initialCommit.getID());
     }
 
-    public static void add(String fileName) {
-        File file = join(CWD, fileName);
-        if (!file.exists()) {
-            throw new GitletException("File does not exist.");
+    /** Stages the files FILENAMES, and every file that is not ignored
+     *  under those that are directories, hashing and storing them in
+     *  parallel. */
+    public static void add(String... fileNames) {
+        Set<String> paths = new TreeSet<>();
+        for (String fileName : fileNames) {
+            File file = join(CWD, fileName);
+            if (!file.exists()) {
+                throw new GitletException("File does not exist.");
+            }
+            if (file.isDirectory()) {
+                paths.addAll(FileWalker.walk(file));
+            } else {
+                paths.add(FileWalker.relativePath(file));
+            }
         }
 
         Stage stage = Stage.load();
-        Blob blob = new Blob(file);
+        Index index = Index.load();
+        Map<String, String> blobIds = index.write(ObjectStore.local(), paths);
+        index.save();
         Commit currentCommit = Commit.load(getBranchPointer(readContentsAsString(HEAD_FILE)));
-        if (currentCommit.containsFile(fileName) && currentCommit.getBlobId(fileName).equals(blob.getId())) {
-            stage.blobs.remove(fileName);
-            stage.save();
-            return;
-        }
-
-        stage.add(fileName, blob.getId());
-        blob.save();
+        blobIds.forEach((fileName, blobId) -> {
+            if (blobId.equals(currentCommit.getBlobId(fileName))) {
+                stage.blobs.remove(fileName);
+            } else {
+                stage.add(fileName, blobId);
+            }
+        });
         stage.save();
     }
 
     public static void commit(String message) {
-        _commit(message, getBranchPointer(readContentsAsString(HEAD_FILE)));
+        _commit(Stage.load(), message, getBranchPointer(readContentsAsString(HEAD_FILE)));
     }
 
-    private static void _commit(String message, String... parents) {
-        Stage stage = Stage.load();
+    /** Commits STAGE on the current branch with MESSAGE and PARENTS, then
+     *  clears the stage. */
+    private static void _commit(Stage stage, String message, String... parents) {
         if (stage.blobs.isEmpty()) {
             throw new GitletException("No changes added to the commit.");
         }
@@ -93,61 +112,96 @@ public class Repository {
         String currentBranch = readContentsAsString(HEAD_FILE);
         Commit commit = new Commit(message, stage.blobs, Arrays.asList(parents));
         commit.save();
+        recordCommit(commit);
         forwardBranch(currentBranch, commit.getID());
         Stage.clear();
     }
 
+    /** Adds COMMIT, just stored, to the commit graph, id index and commit
+     *  log of the current repository. */
+    private static void recordCommit(Commit commit) {
+        CommitGraph.local().addNew(commit.getID());
+        CommitIndex.local().add(commit.getID());
+        CommitLog.local().add(commit);
+    }
+
+    /** Unstages file FILENAME, or every staged or tracked file under it
+     *  if it names a directory, and stages the removal of those tracked by
+     *  the current commit. */
     public static void rm(String filename) {
-        File file = join(CWD, filename);
         Stage stage = Stage.load();
         String currentBranch = readContentsAsString(HEAD_FILE);
         Commit currentCommit = Commit.load(getBranchPointer(currentBranch));
-
-        if (!stage.blobs.containsKey(filename) && !currentCommit.getBlobs().containsKey(filename)) {
-            throw new GitletException("No reason to remove the file.");
+        String path = FileWalker.relativePath(join(CWD, filename));
+
+        Set<String> targets = new TreeSet<>();
+        if (stage.blobs.containsKey(path) || currentCommit.containsFile(path)) {
+            targets.add(path);
+        } else if (!path.isEmpty()) {
+            String dir = path + "/";
+            targets.addAll(stage.blobs.subMap(dir, dir + Character.MAX_VALUE).keySet());
+            for (String tracked : currentCommit.getBlobs().keySet()) {
+                if (tracked.startsWith(dir)) {
+                    targets.add(tracked);
+                }
+            }
         }
-        // unstage the file if it is staged
-        if (stage.blobs.containsKey(filename)) {
-            stage.blobs.remove(filename);
-            stage.save();
+        if (targets.isEmpty()) {
+            throw new GitletException("No reason to remove the file.");
         }
 
-        if (currentCommit.getBlobs().containsKey(filename)) {
-            stage.add(filename, "-" + currentCommit.getBlobId(filename));
-            stage.save();
-            Utils.restrictedDelete(file);
+        for (String target : targets) {
+            // unstage the file if it is staged
+            stage.blobs.remove(target);
+            if (currentCommit.containsFile(target)) {
+                stage.add(target, "-" + currentCommit.getBlobId(target));
+                deleteWorkingFile(target);
+            }
         }
+        stage.save();
     }
 
     public static void log() {
         String currentBranch = readContentsAsString(HEAD_FILE);
-        Commit currentCommit = Commit.load(getBranchPointer(currentBranch));
-        while (currentCommit != null) {
-            currentCommit.log();
-            List<String> parents = currentCommit.getParents();
-            currentCommit = parents.isEmpty() ? null : Commit.load(parents.get(0));
+        CommitGraph graph = CommitGraph.local();
+        int pos = graph.position(getBranchPointer(currentBranch));
+        for (; pos != CommitGraph.NONE; pos = graph.firstParent(pos)) {
+            Commit.load(graph.id(pos)).log();
         }
     }
 
     public static void globalLog() {
-        Utils.plainFilenamesIn(COMMIT_DIR).forEach(commitId -> {
-            Commit commit = Commit.load(commitId);
-            commit.log();
-        });
+        CommitLog.local().forEach(CommitLog.Record::log);
     }
 
     public static void find(String message) {
-        boolean found = false;
-        for (String commitId : Utils.plainFilenamesIn(COMMIT_DIR)) {
-            Commit commit = Commit.load(commitId);
-            if (commit.getMessage().equals(message)) {
-                System.out.println(commit.getID());
-                found = true;
-            }
+        List<CommitLog.Record> found = CommitLog.local().find(message);
+        if (found.isEmpty()) {
+            throw new GitletException("Found no commit with that message.");
         }
-        if (!found) {
+        found.forEach(record -> System.out.println(record.id));
+    }
+
+    /** Prints the ids of all commits whose message contains a match for
+     *  the regular expression PATTERN, scanning the commit log. */
+    public static void findMatching(String pattern) {
+        Pattern regex;
+        try {
+            regex = Pattern.compile(pattern);
+        } catch (PatternSyntaxException excp) {
+            throw new GitletException("Invalid pattern.");
+        }
+        List<String> found = new ArrayList<>();
+        CommitLog.local().forEach(record -> {
+            if (regex.matcher(record.message).find()) {
+                found.add(record.id);
+            }
+        });
+        if (found.isEmpty()) {
             throw new GitletException("Found no commit with that message.");
         }
+        Collections.sort(found);
+        found.forEach(System.out::println);
     }
 
     public static void status() {
@@ -162,7 +216,8 @@ public class Repository {
         System.out.println();
 
         System.out.println("=== Staged Files ===");
-        Stage stage = Stage.load();
+        WorkingTree workingTree = WorkingTree.scan();
+        Stage stage = workingTree.stage();
         List<String> removedFiles = new ArrayList<>();
         for (String fileName : stage.blobs.keySet()) {
             if (stage.blobs.get(fileName).startsWith("-")) {
@@ -180,76 +235,14 @@ public class Repository {
         System.out.println();
 
         System.out.println("=== Modifications Not Staged For Commit ===");
-        List<String> modifiedFiles = getModifiedFiles();
-        modifiedFiles.forEach(System.out::println);
+        workingTree.modified().forEach(System.out::println);
         System.out.println();
 
         System.out.println("=== Untracked Files ===");
-        List<String> untrackedFiles = getUntrackedFiles();
-        untrackedFiles.forEach(System.out::println);
+        workingTree.untracked().forEach(System.out::println);
         System.out.println();
     }
 
-    private static List<String> getModifiedFiles() {
-        List<String> modifiedFiles = new ArrayList<>();
-        String currentBranch = readContentsAsString(HEAD_FILE);
-        Commit currentCommit = Commit.load(getBranchPointer(currentBranch));
-        Stage stage = Stage.load();
-
-        Set<String> allFiles = new HashSet<>(currentCommit.getBlobs().keySet());
-        allFiles.addAll(stage.blobs.keySet());
-
-        for (String filename : allFiles) {
-            String stagedBlobId = stage.blobs.get(filename);
-            String commitBlobId = currentCommit.getBlobs().get(filename);
-            File wdFile = join(CWD, filename);
-            boolean fileExists = wdFile.exists();
-
-            // Tracked in the current commit, changed in the working directory, but not staged;
-            if (commitBlobId != null && fileExists && stagedBlobId == null) {
-                if (!Blob.blobID(wdFile).equals(commitBlobId)) {
-                    modifiedFiles.add(filename + " (modified)");
-                    continue;
-                }
-            }
-            // Staged for addition, but with different contents than in the working directory;
-            if (stagedBlobId != null && fileExists) {
-                if (!Blob.blobID(wdFile).equals(stagedBlobId)) {
-                    modifiedFiles.add(filename + " (modified)");
-                    continue;
-                }
-            }
-            // Staged for addition, but deleted in the working directory;
-            if (stagedBlobId != null && !stagedBlobId.startsWith("-") && !fileExists) {
-                modifiedFiles.add(filename + " (deleted)");
-                continue;
-            }
-            // Not staged for removal, but tracked in the current commit and deleted from the working directory.
-            if (!(stagedBlobId != null && stagedBlobId.startsWith("-")) && commitBlobId != null && !fileExists) {
-                if (!commitBlobId.startsWith("-")) {
-                    modifiedFiles.add(filename + " (deleted)");
-                }
-            }
-        }
-
-        return modifiedFiles;
-    }
-
-    private static List<String> getUntrackedFiles() {
-        List<String> untrackedFiles = new ArrayList<>();
-        String currentBranch = readContentsAsString(HEAD_FILE);
-        Commit currentCommit = Commit.load(getBranchPointer(currentBranch));
-        for (String fileName : plainFilenamesIn(CWD)) {
-            if (isIgnored(fileName)) {
-                continue;
-            }
-            if (!currentCommit.containsFile(fileName) && !Stage.load().blobs.containsKey(fileName)) {
-                untrackedFiles.add(fileName);
-            }
-        }
-        return untrackedFiles;
-    }
-
     public static void checkout(String... args) {
         if (args.length == 1) {
             checkoutBranch(args[0]);
@@ -280,10 +273,6 @@ public class Repository {
         writeContents(HEAD_FILE, branchName);
     }
 
-    private static boolean isIgnored(String fileName) {
-        return fileName.equals(".gitlet") || fileName.equals("Makefile") || fileName.equals("proj2.iml") || fileName.equals("pom.xml");
-    }
-
     private static void checkoutFile(String filename) {
         String currentBranch = readContentsAsString(HEAD_FILE);
         checkoutFile(filename, getBranchPointer(currentBranch));
@@ -294,8 +283,33 @@ public class Repository {
         if (!commit.containsFile(filename)) {
             throw new GitletException("File does not exist in that commit.");
         }
-        Blob blob = Blob.load(commit.getBlobId(filename));
-        writeContents(join(CWD, filename), blob.getContent());
+        Index index = Index.load();
+        writeWorkingFile(filename, commit.getBlobId(filename), index);
+        index.save();
+    }
+
+    /** Writes blob BLOBID to the working file FILENAME, creating its
+     *  directories if needed, and records it in INDEX. */
+    private static void writeWorkingFile(String filename, String blobId, Index index) {
+        File file = join(CWD, filename);
+        file.getParentFile().mkdirs();
+        Blob.load(blobId).writeTo(file);
+        index.update(filename, blobId);
+    }
+
+    /** Deletes the working file FILENAME, then any directories above it
+     *  that are left empty. */
+    private static void deleteWorkingFile(String filename) {
+        File file = join(CWD, filename);
+        if (file.isDirectory() || !file.delete()) {
+            return;
+        }
+        for (File dir = file.getParentFile(); !dir.equals(CWD); dir = dir.getParentFile()) {
+            String[] rest = dir.list();
+            if (rest == null || rest.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
     }
 
     private static void forwardBranch(String branch, String commitId) {
@@ -307,7 +321,7 @@ public class Repository {
         writeContents(branchFile, commitId);
     }
 
-    private static String getBranchPointer(String branch) {
+    static String getBranchPointer(String branch) {
         File prefix = HEADS_DIR;
         if (branch.contains(File.separator)) {
             prefix = REMOTE_DIR;
@@ -348,29 +362,50 @@ public class Repository {
     }
 
     private static void checkoutCommit(String commitId) {
+        checkoutCommit(WorkingTree.scan(), commitId);
+    }
+
+    /** Checks out commit COMMITID over WORKINGTREE, a snapshot of the
+     *  working directory. */
+    private static void checkoutCommit(WorkingTree workingTree, String commitId) {
         Commit commit = Commit.load(commitId);
-        List<String> untrackedFiles = getUntrackedFiles();
-        if (!untrackedFiles.isEmpty()) {
+        Commit currentCommit = workingTree.head();
+        Stage stage = workingTree.stage();
+        if (!workingTree.untracked().isEmpty()) {
             throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
         }
 
-        for (String fileName : plainFilenamesIn(CWD)) {
-            if (isIgnored(fileName)) {
-                continue;
-            }
-            if (!commit.containsFile(fileName)) {
-                Utils.restrictedDelete(join(CWD, fileName));
+        // Only files the current commit or the stage knows of can go away:
+        // those the two trees disagree on, and staged additions.  Of the
+        // files the trees agree on, only those whose working copies were
+        // changed are written again, so the others keep their mtimes.
+        ObjectStore store = ObjectStore.local();
+        Map<String, String> targetBlobs = commit.getBlobs();
+        Map<String, String> changedBlobs = new TreeMap<>();
+        Set<String> sameFiles = new HashSet<>(targetBlobs.keySet());
+        Tree.diff(store, currentCommit.getTree(), commit.getTree(),
+                (fileName, oldId, newId) -> {
+                    sameFiles.remove(fileName);
+                    if (newId == null) {
+                        deleteWorkingFile(fileName);
+                    } else {
+                        changedBlobs.put(fileName, newId);
+                    }
+                });
+        stage.blobs.forEach((fileName, blobId) -> {
+            if (!blobId.startsWith("-") && !commit.containsFile(fileName)) {
+                deleteWorkingFile(fileName);
             }
-        }
+        });
 
-        commit.getBlobs().forEach((fileName, blobId) -> {
-            if (blobId.startsWith("-")) {
-                Utils.restrictedDelete(join(CWD, fileName));
-                return;
+        Index index = Index.load();
+        index.blobIds(sameFiles).forEach((fileName, blobId) -> {
+            if (!targetBlobs.get(fileName).equals(blobId)) {
+                changedBlobs.put(fileName, targetBlobs.get(fileName));
             }
-            Blob blob = Blob.load(blobId);
-            writeContents(join(CWD, fileName), blob.getContent());
         });
+        new Checkout(store).write(changedBlobs, index);
+        index.save();
 
         Stage.clear();
     }
@@ -380,8 +415,8 @@ public class Repository {
     }
 
     private static void _merge(File prefix, String mergeBranch) {
-        Stage stage = Stage.load();
-        if (!stage.isEmpty()) {
+        WorkingTree workingTree = WorkingTree.scan();
+        if (!workingTree.stage().isEmpty()) {
             throw new GitletException("You have uncommitted changes.");
         }
 
@@ -402,7 +437,7 @@ public class Repository {
             throw new GitletException("No common ancestor between the current branch and the given branch.");
         }
         if (splitPoint.equals(currentBranchPointer)) {
-            checkoutCommit(mergeBranchPointer);
+            checkoutCommit(workingTree, mergeBranchPointer);
             forwardBranch(currentBranch, mergeBranchPointer);
             System.out.println("Current branch fast-forwarded.");
             return;
@@ -413,7 +448,7 @@ public class Repository {
         }
 
         Commit splitCommit = Commit.load(splitPoint);
-        Commit currentCommit = Commit.load(currentBranchPointer);
+        Commit currentCommit = workingTree.head();
         Commit mergeCommit = Commit.load(mergeBranchPointer);
         boolean conflict = false;
 
@@ -422,114 +457,139 @@ public class Repository {
          * 2. not modified in given, modified/created/removed in current -> do nothing
          * 3. content same -> do nothing
          * 4. removed in given, not modified in current -> git rm
-         * 5. both modified and different -> conflict
+         * 5. both modified and different -> line merge, maybe with conflicts
+         * Only the files that differ between the split point and either side
+         * can fall in cases 1, 4 or 5, and Tree.diff finds them without
+         * reading the subtrees all three commits share.
          */
-        Set<String> allFiles = new HashSet<>(splitCommit.getBlobs().keySet());
-        allFiles.addAll(currentCommit.getBlobs().keySet());
-        allFiles.addAll(mergeCommit.getBlobs().keySet());
-
-        List<String> untrackedFiles = getUntrackedFiles();
-
-        for (String filename : allFiles) {
+        ObjectStore store = ObjectStore.local();
+        Set<String> changedFiles = new TreeSet<>();
+        Tree.DiffHandler collect = (filename, oldId, newId) -> changedFiles.add(filename);
+        Tree.diff(store, splitCommit.getTree(), currentCommit.getTree(), collect);
+        Tree.diff(store, splitCommit.getTree(), mergeCommit.getTree(), collect);
+
+        // Plan the whole result before touching anything: the blobs to
+        // write, the files to delete and the stage.  A merge that cannot
+        // finish fails here and leaves the working tree as it was.
+        Stage stage = workingTree.stage();
+        Map<String, String> writes = new TreeMap<>();
+        List<String> deletes = new ArrayList<>();
+        for (String filename : changedFiles) {
             String splitBlobId = splitCommit.getBlobId(filename);
             String currentBlobId = currentCommit.getBlobId(filename);
             String mergeBlobId = mergeCommit.getBlobId(filename);
 
-            boolean currentModified = currentBlobId != null && !currentBlobId.equals(splitBlobId);
-            boolean mergeModified = mergeBlobId != null && !mergeBlobId.equals(splitBlobId);
-            boolean mergeRemoved = mergeBlobId != null && mergeBlobId.startsWith("-");
-            boolean contentSame = currentBlobId != null && currentBlobId.equals(mergeBlobId);
+            boolean currentModified = !Objects.equals(currentBlobId, splitBlobId);
+            boolean mergeModified = !Objects.equals(mergeBlobId, splitBlobId);
+            boolean contentSame = Objects.equals(currentBlobId, mergeBlobId);
 
-            // 1. modified/created in given, not modified in current -> checkout and stage
-            if (!mergeRemoved && mergeModified && !currentModified) {
-                if (untrackedFiles.contains(filename)) {
-                    throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
-                }
-                checkoutFile(filename, mergeBranchPointer);
-                Stage.addStage(filename, mergeBlobId);
-                continue;
-            }
             // 2. not modified in given, modified/created/removed in current -> do nothing
-            if (!mergeModified && currentModified) {
-                continue;
-            }
             // 3. content same -> do nothing
-            if (contentSame) {
+            if (!mergeModified || contentSame) {
                 continue;
             }
-            // 4. removed in given, not modified in current -> git rm
-            if (mergeRemoved && !currentModified) {
-                if (untrackedFiles.contains(filename)) {
-                    throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
+            if (workingTree.isUntracked(filename)) {
+                throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+            if (!currentModified) {
+                if (mergeBlobId != null) {
+                    // 1. modified/created in given, not modified in current -> checkout and stage
+                    writes.put(filename, mergeBlobId);
+                    stage.add(filename, mergeBlobId);
+                } else {
+                    // 4. removed in given, not modified in current -> git rm
+                    deletes.add(filename);
+                    stage.add(filename, "-" + currentBlobId);
                 }
-                rm(filename);
                 continue;
             }
-            // 5. both modified and different -> conflict
-            if (mergeModified && currentModified && !contentSame) {
-                StringBuilder conflictContent = new StringBuilder();
-                conflictContent.append("<<<<<<< HEAD\n");
-                if (currentBlobId != null && !currentBlobId.startsWith("-")) {
-                    conflictContent.append(new String(Blob.load(currentBlobId).getContent()));
-                }
-                conflictContent.append("=======\n");
-                if (mergeBlobId != null && !mergeBlobId.startsWith("-")) {
-                    conflictContent.append(new String(Blob.load(mergeBlobId).getContent()));
-                }
-                conflictContent.append(">>>>>>>\n");
-                writeContents(join(CWD, filename), conflictContent.toString().getBytes());
-
+            // 5. both modified and different -> merge the lines, leaving
+            //    conflicts where both sides changed the same ones; a file
+            //    removed on one side conflicts as a whole.
+            byte[] current = currentBlobId == null ? new byte[0] : Blob.load(currentBlobId).getContent();
+            byte[] given = mergeBlobId == null ? new byte[0] : Blob.load(mergeBlobId).getContent();
+            byte[] merged;
+            if (currentBlobId != null && mergeBlobId != null) {
+                byte[] base = splitBlobId == null ? new byte[0] : Blob.load(splitBlobId).getContent();
+                Diff3.Result result = Diff3.merge(base, current, given);
+                merged = result.contents;
+                conflict |= result.conflict;
+            } else {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                out.writeBytes("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+                out.writeBytes(current);
+                out.writeBytes("=======\n".getBytes(StandardCharsets.UTF_8));
+                out.writeBytes(given);
+                out.writeBytes(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+                merged = out.toByteArray();
                 conflict = true;
-                add(filename);
-                continue;
             }
-
-            System.out.println("should not be here");
+            String mergedBlobId = Blob.write(store, merged);
+            if (!mergedBlobId.equals(currentBlobId)) {
+                writes.put(filename, mergedBlobId);
+                stage.add(filename, mergedBlobId);
+            }
         }
 
+        // Apply it in one batch; the stage is only written by the commit.
+        deletes.forEach(Repository::deleteWorkingFile);
+        Index index = Index.load();
+        new Checkout(store).write(writes, index);
+        index.save();
+
         if (conflict) {
             System.out.println("Encountered a merge conflict.");
         }
 
-        _commit("Merged " + mergeBranch + " into " + currentBranch + ".", currentBranchPointer, mergeBranchPointer);
+        _commit(stage, "Merged " + mergeBranch + " into " + currentBranch + ".",
+                currentBranchPointer, mergeBranchPointer);
     }
 
     private static String findSplitPoint(String currentCommitId, String mergeCommitId) {
-        Set<String> mergeAncestors = new HashSet<>();
-        Stack<String> another = new Stack<>();
-        another.push(mergeCommitId);
-
-        while (!another.isEmpty()) {
-            mergeCommitId = another.pop();
-            mergeAncestors.add(mergeCommitId);
-            List<String> parents = Commit.load(mergeCommitId).getParents();
-            for (String parent : parents) {
-                another.push(parent);
-            }
-        }
+        CommitGraph graph = CommitGraph.local();
+        int base = graph.mergeBase(graph.position(currentCommitId), graph.position(mergeCommitId));
+        return base == CommitGraph.NONE ? null : graph.id(base);
+    }
 
-        Queue<String> queue = new LinkedList<>();
-        queue.add(currentCommitId);
-        while (!queue.isEmpty()) {
-            currentCommitId = queue.poll();
-            if (mergeAncestors.contains(currentCommitId)) {
-                return currentCommitId;
-            }
-            List<String> parents = Commit.load(currentCommitId).getParents();
-            for (String parent : parents) {
-                queue.add(parent);
-            }
+    /** Prints the id of the best common ancestor of commits FIRST and
+     *  SECOND, each a branch name or a commit id. */
+    public static void mergeBase(String first, String second) {
+        String base = findSplitPoint(resolveCommit(first), resolveCommit(second));
+        if (base == null) {
+            throw new GitletException("No common ancestor between the given commits.");
         }
+        System.out.println(base);
+    }
 
-        return null;
+    /** Returns the id of the commit NAME refers to: the head of a local or
+     *  remote branch, or a possibly abbreviated commit id. */
+    private static String resolveCommit(String name) {
+        if (join(HEADS_DIR, name).isFile()) {
+            return getBranchPointer(HEADS_DIR, name);
+        }
+        if (name.contains("/") && join(REMOTE_DIR, name.replace("/", File.separator)).isFile()) {
+            return getBranchPointer(REMOTE_DIR, name.replace("/", File.separator));
+        }
+        return getFullCommitId(name);
     }
 
-    public static void addRemote(String remoteName, String remotePath) {
+    /** Adds remote REMOTENAME, the repository at REMOTEPATH.  If SHARED,
+     *  its objects also become alternates of this repository, so fetching
+     *  from it copies nothing; they stay alternates after rm-remote, since
+     *  objects fetched meanwhile may exist only there. */
+    public static void addRemote(String remoteName, String remotePath, boolean shared) {
         Config config = Config.load();
         if (config.remote.containsKey(remoteName)) {
             throw new GitletException("A remote with that name already exists.");
         }
         config.add(remoteName, remotePath.replace("/", File.separator));
+        if (shared) {
+            File remoteFile = join(CWD, config.remote.get(remoteName));
+            if (!join(remoteFile, "objects").isDirectory()) {
+                throw new GitletException("Remote directory not found.");
+            }
+            config.share(remoteFile);
+        }
         config.save();
     }
 
@@ -545,43 +605,32 @@ public class Repository {
 
     public static void push(String remoteName, String remoteBranch) {
         File remoteFile = getRemoteFile(remoteName);
-
         String localBranchPointer = getBranchPointer(readContentsAsString(HEAD_FILE));
-        String temp = localBranchPointer;
         File remoteBranchFile = join(remoteFile, "refs", "heads", remoteBranch);
 
-        String remotePointer = readContentsAsString(remoteBranchFile);
-        Stack<String> stack = new Stack<>();
-        while (temp != null) {
-            if (temp.equals(remotePointer)) {
-                break;
+        if (remoteBranchFile.exists()) {
+            // The remote head must be in the local history, or the push
+            // would drop its commits from the branch.
+            String remotePointer = readContentsAsString(remoteBranchFile);
+            CommitGraph graph = CommitGraph.local();
+            if (!ObjectStore.local().contains(Commit.TYPE, remotePointer)) {
+                throw new GitletException("Please pull down remote changes before pushing.");
             }
-            stack.push(temp);
-
-            List<String> parents = Commit.load(temp).getParents();
-            if (parents.isEmpty()) {
-                temp = null;
-            } else {
-                temp = parents.get(0);
+            int remote = graph.position(remotePointer);
+            if (graph.mergeBase(graph.position(localBranchPointer), remote) != remote) {
+                throw new GitletException("Please pull down remote changes before pushing.");
             }
         }
 
-        if (temp == null && remoteBranchFile.exists()) {
-            throw new GitletException("Please pull down remote changes before pushing.");
-        }
-
-        File remoteCommitDir = join(remoteFile, "objects", "commit");
-        File remoteBlobDir = join(remoteFile, "objects", "blob");
-        while (!stack.isEmpty()) {
-            String commitId = stack.pop();
-            Commit commit = Commit.load(commitId);
-            commit.getBlobs().forEach((fileName, blobId) -> {
-                copy(join(remoteBlobDir, blobId), join(BLOB_DIR, blobId));
-            });
-            copy(join(remoteCommitDir, commitId), join(COMMIT_DIR, commitId));
+        Transfer transfer = new Transfer(GITLET_DIR, remoteFile);
+        transfer.send(localBranchPointer);
+        if (Main.debug) {
+            System.err.print(transfer.report());
         }
 
+        remoteBranchFile.getParentFile().mkdirs();
         Utils.writeContents(remoteBranchFile, localBranchPointer);
+        join(REMOTE_DIR, remoteName).mkdirs();
         forwardBranch(remoteName + File.separator + remoteBranch, localBranchPointer);
     }
 
@@ -605,37 +654,81 @@ public class Repository {
             throw new GitletException("That remote does not have that branch.");
         }
 
-        File remoteCommitFile = join(remoteFile, "objects", "commit");
-        File remoteBlobFile = join(remoteFile, "objects", "blob");
-        String remotePointer = readContentsAsString(remoteBranchFile);
-        String currentRemotePointer = getRemotePointer(remoteName, remoteBranch);
-        while (!remotePointer.equals(currentRemotePointer)) {
-            Commit commit = Commit.remoteLoad(remoteCommitFile, remotePointer);
-            commit.getBlobs().forEach((fileName, blobId) -> {
-                copy(join(BLOB_DIR, blobId), join(remoteBlobFile, blobId));
-            });
-            copy(join(COMMIT_DIR, remotePointer), join(remoteCommitFile, remotePointer));
-
-            List<String> parents = commit.getParents();
-            if (parents.isEmpty()) {
-                break;
-            }
-            remotePointer = parents.get(0);
+        Transfer transfer = new Transfer(remoteFile, GITLET_DIR);
+        transfer.send(readContentsAsString(remoteBranchFile));
+        if (Main.debug) {
+            System.err.print(transfer.report());
         }
 
         copyContents(join(REMOTE_DIR, remoteName, remoteBranch), remoteBranchFile);
     }
 
-    private static String getRemotePointer(String remoteName, String remoteBranch) {
-        try {
-            return readContentsAsString(join(REMOTE_DIR, remoteName, remoteBranch));
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
     public static void pull(String remoteName, String remoteBranch) {
         fetch(remoteName, remoteBranch);
         _merge(REMOTE_DIR, remoteName + File.separator + remoteBranch);
     }
+
+    public static void repack() {
+        ObjectStore.local().repack();
+    }
+
+    /** Prints how many objects of each type the repository holds and how
+     *  much chunking saves: the total size of the chunked blobs against
+     *  the size of the distinct chunks they are made of. */
+    public static void storage() {
+        ObjectStore store = ObjectStore.local();
+        List<String> blobIds = store.list(Blob.TYPE);
+        Map<String, Integer> chunks = new HashMap<>();
+        long chunkedBlobs = 0;
+        long logicalSize = 0;
+        for (String blobId : blobIds) {
+            Blob.Manifest manifest = Blob.manifest(store, blobId);
+            if (manifest != null) {
+                chunkedBlobs += 1;
+                logicalSize += manifest.size;
+                for (int i = 0; i < manifest.chunks.size(); i += 1) {
+                    chunks.put(manifest.chunks.get(i), manifest.lengths.get(i));
+                }
+            }
+        }
+        long chunkSize = 0;
+        for (int length : chunks.values()) {
+            chunkSize += length;
+        }
+        System.out.println("commits: " + store.list(Commit.TYPE).size());
+        System.out.println("trees: " + store.list(Tree.TYPE).size());
+        System.out.println("blobs: " + blobIds.size() + " (" + chunkedBlobs + " chunked)");
+        System.out.println("chunks: " + store.list(Blob.CHUNK_TYPE).size());
+        System.out.println("chunked blob size: " + logicalSize + " bytes");
+        System.out.println("unique chunk size: " + chunkSize + " bytes");
+        System.out.printf("dedup ratio: %.2f%n", chunkSize == 0 ? 1.0 : (double) logicalSize / chunkSize);
+        System.out.println("size on disk: " + store.diskSize() + " bytes");
+    }
+
+    /** Rewrites the commits, blobs, stage and config of a repository made
+     *  by an older gitlet, which serialized them, in the current encodings.
+     *  Packed objects that are rewritten are repacked afterwards. */
+    public static void migrate() {
+        ObjectStore store = ObjectStore.local();
+        boolean rewritten = false;
+        for (String commitId : store.list(Commit.TYPE)) {
+            byte[] bytes = store.read(Commit.TYPE, commitId);
+            if (!Codec.isEncoded(bytes)) {
+                store.replace(Commit.TYPE, commitId, Commit.decode(bytes).encode());
+                rewritten = true;
+            }
+        }
+        for (String blobId : store.list(Blob.TYPE)) {
+            Blob blob = Blob.load(store, blobId);
+            if (blob.isSerialized()) {
+                blob.saveTo(store);
+                rewritten = true;
+            }
+        }
+        Stage.load().save();
+        Config.load().save();
+        if (rewritten && !store.packs().isEmpty()) {
+            store.repack();
+        }
+    }
 }
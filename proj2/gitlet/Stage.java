@@ -4,10 +4,21 @@ import java.io.Serializable;
 import java.util.TreeMap;
 
 public class Stage implements Serializable {
+    private static final long serialVersionUID = -2609538945392600878L;
     public TreeMap<String, String> blobs = new TreeMap<>();
 
     public static Stage load() {
-        return Utils.readObject(Repository.STAGE_FILE, Stage.class);
+        byte[] bytes = Utils.readContents(Repository.STAGE_FILE);
+        if (!Codec.isEncoded(bytes)) {
+            return Utils.deserialize(bytes, Stage.class);
+        }
+        Codec.Reader in = new Codec.Reader(bytes, 's');
+        Stage stage = new Stage();
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String path = in.readPath();
+            stage.blobs.put(path, in.readId());
+        }
+        return stage;
     }
 
     public void add(String fileName, String blobId) {
@@ -15,11 +26,14 @@ public class Stage implements Serializable {
     }
 
     public void save() {
-        Utils.writeObject(Repository.STAGE_FILE, this);
+        Codec.Writer out = new Codec.Writer('s', 1);
+        out.writeLong(blobs.size());
+        blobs.forEach((path, blobId) -> out.writePath(path).writeId(blobId));
+        Utils.writeContents(Repository.STAGE_FILE, out.toByteArray());
     }
 
     public static void clear() {
-        Utils.writeObject(Repository.STAGE_FILE, new Stage());
+        new Stage().save();
     }
 
     public static void addStage(String fileName, String blobId) {
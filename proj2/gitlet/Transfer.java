@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/** Copies history from one repository to another, for push and fetch.
+ *
+ *  The commits to send are those reachable from a tip, through every
+ *  parent, that the receiving repository does not have: the walk of the
+ *  sender's commit graph stops at each commit the receiver already has,
+ *  since it then has all that commit's ancestors too.  The commits are
+ *  copied oldest first, each after its trees and blobs, so an interrupted
+ *  transfer never leaves a commit whose contents are missing.  Trees the
+ *  receiver already has are skipped whole, so for each commit only the
+ *  directories it changed are looked at.  A commit the receiver can only
+ *  read from an alternate is still recorded in its history, though none
+ *  of its objects need copying. */
+class Transfer {
+
+    private final ObjectStore from;
+    private final CommitGraph fromGraph;
+    private final ObjectStore to;
+    private final CommitGraph toGraph;
+    private final CommitIndex toIndex;
+    private final CommitLog toLog;
+
+    /** A transfer from the repository in FROMDIR to the one in TODIR,
+     *  either of which may be the current one.  Nothing is written into
+     *  FROMDIR: commits missing from its graph are added only in
+     *  memory. */
+    Transfer(File fromDir, File toDir) {
+        if (isLocal(fromDir)) {
+            from = ObjectStore.local();
+            fromGraph = CommitGraph.local();
+        } else {
+            from = new ObjectStore(fromDir, true);
+            fromGraph = new CommitGraph(fromDir, from, true);
+        }
+        if (isLocal(toDir)) {
+            to = ObjectStore.local();
+            toGraph = CommitGraph.local();
+            toIndex = CommitIndex.local();
+            toLog = CommitLog.local();
+        } else {
+            to = new ObjectStore(toDir);
+            toGraph = new CommitGraph(toDir, to);
+            toIndex = new CommitIndex(toDir, to, toGraph);
+            toLog = new CommitLog(toDir, to);
+        }
+    }
+
+    private static boolean isLocal(File gitletDir) {
+        return gitletDir.getAbsoluteFile().toPath().normalize()
+                .equals(Repository.GITLET_DIR.getAbsoluteFile().toPath().normalize());
+    }
+
+    /** Copies commit TIP and every ancestor of it the receiver lacks,
+     *  with their contents. */
+    void send(String tip) {
+        BitSet seen = new BitSet(fromGraph.size());
+        List<Integer> wanted = new ArrayList<>();
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(fromGraph.position(tip));
+        while (!pending.isEmpty()) {
+            int pos = pending.pop();
+            if (seen.get(pos)) {
+                continue;
+            }
+            seen.set(pos);
+            String id = fromGraph.id(pos);
+            if (toGraph.contains(id) || to.holds(Commit.TYPE, id)) {
+                continue;
+            }
+            wanted.add(pos);
+            for (int parent : fromGraph.parents(pos)) {
+                pending.push(parent);
+            }
+        }
+
+        // Rows are appended parents first, so position order is oldest first.
+        Collections.sort(wanted);
+        for (int pos : wanted) {
+            String id = fromGraph.id(pos);
+            Commit commit = Commit.load(from, id);
+            commit.copyContents(to);
+            from.copyTo(to, Commit.TYPE, id);
+            toGraph.add(id);
+            toIndex.add(id);
+            toLog.add(commit);
+        }
+    }
+
+    /** Returns the numbers of objects and bytes sent so far, by type,
+     *  and how many objects were hard-linked. */
+    String report() {
+        StringBuilder out = new StringBuilder("transfer:");
+        long bytes = 0;
+        for (String type : Pack.TYPES) {
+            long[] count = to.received(type);
+            out.append(' ').append(count[0]).append(' ').append(type).append(count[0] == 1 ? "," : "s,");
+            bytes += count[1];
+        }
+        return out.append(' ').append(bytes).append(" bytes, ")
+                .append(to.linked()).append(" linked\n").toString();
+    }
+}
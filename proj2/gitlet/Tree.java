@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The contents of one directory of a commit: a sorted map from names to
+ *  the ids of blobs (files) and of other trees (subdirectories).  Trees
+ *  are content-addressed like every other object, so a directory that did
+ *  not change between two commits is the same tree object in both, and
+ *  comparing two snapshots never needs to look inside a subtree whose ids
+ *  are equal. */
+class Tree {
+
+    /** The object type under which trees are stored. */
+    static final String TYPE = "tree";
+
+    /** Receives the differences between two trees. */
+    interface DiffHandler {
+        /** Called for each file PATH whose blob id differs: OLDID in the
+         *  first tree and NEWID in the second, either of which is null if
+         *  PATH is absent from that tree. */
+        void changed(String path, String oldId, String newId);
+    }
+
+    /** The id of the tree with no entries. */
+    static final String EMPTY_ID = Utils.sha1(new Tree().encode());
+
+    /** Rough size in memory of one entry, for the object cache. */
+    private static final long ENTRY_BYTES = 120;
+
+    /** Entries of this tree, by name.  Loaded trees are shared through
+     *  the object cache and must not be changed. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /** One name in a tree. */
+    private static class Entry {
+        final String id;
+        final boolean isTree;
+
+        Entry(String id, boolean isTree) {
+            this.id = id;
+            this.isTree = isTree;
+        }
+    }
+
+    /** Returns the tree ID of STORE, or an empty tree if ID is null. */
+    static Tree load(ObjectStore store, String id) {
+        if (id == null) {
+            return new Tree();
+        }
+        Tree tree = (Tree) store.cache().get(TYPE, id);
+        if (tree != null) {
+            return tree;
+        }
+        byte[] bytes = store.read(TYPE, id);
+        if (bytes == null) {
+            throw new IllegalArgumentException("no tree " + id);
+        }
+        tree = new Tree();
+        Codec.Reader in = new Codec.Reader(bytes, 't');
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String name = in.readString();
+            boolean isTree = in.readInt() == 1;
+            tree.entries.put(name, new Entry(in.readId(), isTree));
+        }
+        store.cache().put(TYPE, id, tree, bytes.length + tree.entries.size() * ENTRY_BYTES);
+        return tree;
+    }
+
+    /** Stores this tree in STORE and returns its id. */
+    String save(ObjectStore store) {
+        byte[] bytes = encode();
+        String id = Utils.sha1(bytes);
+        store.write(TYPE, id, bytes);
+        return id;
+    }
+
+    private byte[] encode() {
+        Codec.Writer out = new Codec.Writer('t', 1);
+        out.writeLong(entries.size());
+        entries.forEach((name, e) -> out.writeString(name).writeLong(e.isTree ? 1 : 0).writeId(e.id));
+        return out.toByteArray();
+    }
+
+    /** Writes the trees holding the files of FILES, a map from
+     *  slash-separated paths to blob ids, into STORE and returns the id of
+     *  the root. */
+    static String build(ObjectStore store, Map<String, String> files) {
+        return apply(store, null, files);
+    }
+
+    /** Returns the id of the tree that results from applying CHANGES to
+     *  tree ROOT (null for an empty tree) of STORE.  CHANGES maps paths to
+     *  new blob ids, or to ids prefixed with "-" for paths to remove.  Only
+     *  the trees on the paths from changed files up to the root are
+     *  rewritten; every other subtree keeps its id. */
+    static String apply(ObjectStore store, String root, Map<String, String> changes) {
+        Tree tree = new Tree();
+        tree.entries.putAll(load(store, root).entries);
+        Map<String, Map<String, String>> nested = new TreeMap<>();
+        changes.forEach((path, blobId) -> {
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                nested.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), blobId);
+            } else if (blobId.startsWith("-")) {
+                tree.entries.remove(path);
+            } else {
+                tree.entries.put(path, new Entry(blobId, false));
+            }
+        });
+        nested.forEach((name, subChanges) -> {
+            Entry old = tree.entries.get(name);
+            String subRoot = old != null && old.isTree ? old.id : null;
+            String subId = apply(store, subRoot, subChanges);
+            if (subId.equals(EMPTY_ID)) {
+                tree.entries.remove(name);
+            } else {
+                tree.entries.put(name, new Entry(subId, true));
+            }
+        });
+        return tree.save(store);
+    }
+
+    /** Returns the id of the blob at PATH under tree ROOT of STORE, or null
+     *  if there is none.  Only the trees along PATH are read. */
+    static String lookup(ObjectStore store, String root, String path) {
+        String[] parts = path.split("/");
+        String id = root;
+        for (int i = 0; i < parts.length; i += 1) {
+            if (id == null) {
+                return null;
+            }
+            Entry e = load(store, id).entries.get(parts[i]);
+            if (e == null || e.isTree != (i < parts.length - 1)) {
+                return null;
+            }
+            id = e.id;
+        }
+        return id;
+    }
+
+    /** Adds every file under tree ROOT of STORE to FILES, with PREFIX
+     *  prepended to its path. */
+    static void flatten(ObjectStore store, String root, String prefix,
+                        Map<String, String> files) {
+        load(store, root).entries.forEach((name, e) -> {
+            if (e.isTree) {
+                flatten(store, e.id, prefix + name + "/", files);
+            } else {
+                files.put(prefix + name, e.id);
+            }
+        });
+    }
+
+    /** Reports to HANDLER every file whose blob differs between trees
+     *  OLDROOT and NEWROOT of STORE (either may be null), in path order.
+     *  Subtrees with equal ids are skipped without being read. */
+    static void diff(ObjectStore store, String oldRoot, String newRoot,
+                     DiffHandler handler) {
+        diff(store, oldRoot, newRoot, "", handler);
+    }
+
+    private static void diff(ObjectStore store, String oldRoot, String newRoot,
+                             String prefix, DiffHandler handler) {
+        if (oldRoot != null && oldRoot.equals(newRoot)) {
+            return;
+        }
+        Tree oldTree = load(store, oldRoot);
+        Tree newTree = load(store, newRoot);
+        List<String> names = new ArrayList<>(oldTree.entries.keySet());
+        for (String name : newTree.entries.keySet()) {
+            if (!oldTree.entries.containsKey(name)) {
+                names.add(name);
+            }
+        }
+        names.sort(null);
+        for (String name : names) {
+            Entry o = oldTree.entries.get(name);
+            Entry n = newTree.entries.get(name);
+            String path = prefix + name;
+            String oldBlob = o != null && !o.isTree ? o.id : null;
+            String newBlob = n != null && !n.isTree ? n.id : null;
+            if (oldBlob != null || newBlob != null) {
+                if (oldBlob == null || !oldBlob.equals(newBlob)) {
+                    handler.changed(path, oldBlob, newBlob);
+                }
+            }
+            String oldSub = o != null && o.isTree ? o.id : null;
+            String newSub = n != null && n.isTree ? n.id : null;
+            if (oldSub != null || newSub != null) {
+                diff(store, oldSub, newSub, path + "/", handler);
+            }
+        }
+    }
+
+    /** Copies tree ROOT of FROM, with every tree and blob under it, into
+     *  TO.  Subtrees TO already has are skipped, since a tree is only ever
+     *  stored after everything it refers to. */
+    static void copy(ObjectStore from, ObjectStore to, String root) {
+        if (to.contains(TYPE, root)) {
+            return;
+        }
+        load(from, root).entries.forEach((name, e) -> {
+            if (e.isTree) {
+                copy(from, to, e.id);
+            } else {
+                Blob.copy(from, to, e.id);
+            }
+        });
+        from.copyTo(to, TYPE, root);
+    }
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A snapshot of the working directory taken once per command: the files
+ *  in it and all its subdirectories, the stage and the HEAD commit, each
+ *  read a single time, so that status, checkout and merge ask about any
+ *  number of files without reloading them.  The snapshot is not updated
+ *  by later changes to the working directory or the stage. */
+class WorkingTree {
+
+    private final Stage stage;
+    private final Commit head;
+    /** The working files that are not ignored, in sorted order. */
+    private final Set<String> files;
+    /** The files tracked by HEAD or named by the stage. */
+    private final Set<String> tracked;
+    private List<String> untracked;
+
+    private WorkingTree(Stage stage, Commit head, Set<String> files) {
+        this.stage = stage;
+        this.head = head;
+        this.files = files;
+        this.tracked = new HashSet<>(head.getBlobs().keySet());
+        this.tracked.addAll(stage.blobs.keySet());
+    }
+
+    /** Returns a snapshot of the current working directory. */
+    static WorkingTree scan() {
+        Stage stage = Stage.load();
+        Commit head = Commit.load(Repository.getBranchPointer(readContentsAsString(Repository.HEAD_FILE)));
+        return new WorkingTree(stage, head, FileWalker.walk(Repository.CWD));
+    }
+
+    Stage stage() {
+        return stage;
+    }
+
+    Commit head() {
+        return head;
+    }
+
+    /** Returns the working files that are not ignored, in sorted order. */
+    Set<String> files() {
+        return Collections.unmodifiableSet(files);
+    }
+
+    /** Returns true iff PATH is a working file that neither HEAD nor the
+     *  stage knows of. */
+    boolean isUntracked(String path) {
+        return files.contains(path) && !tracked.contains(path);
+    }
+
+    /** Returns the untracked working files, in sorted order. */
+    List<String> untracked() {
+        if (untracked == null) {
+            untracked = new ArrayList<>();
+            for (String path : files) {
+                if (!tracked.contains(path)) {
+                    untracked.add(path);
+                }
+            }
+        }
+        return untracked;
+    }
+
+    /** Returns the tracked files whose working copies differ from both the
+     *  stage and HEAD, each followed by " (modified)" or " (deleted)", in
+     *  sorted order.  The working files are hashed in parallel. */
+    List<String> modified() {
+        List<String> modifiedFiles = new ArrayList<>();
+        Index index = Index.load();
+
+        Map<String, String> commitBlobs = head.getBlobs();
+        Set<String> allFiles = new TreeSet<>(tracked);
+        index.retain(allFiles);
+        Map<String, String> wdBlobs = index.blobIds(allFiles);
+
+        for (String filename : allFiles) {
+            String stagedBlobId = stage.blobs.get(filename);
+            String commitBlobId = commitBlobs.get(filename);
+            String wdBlobId = wdBlobs.get(filename);
+            boolean fileExists = wdBlobId != null;
+
+            // Tracked in the current commit, changed in the working directory, but not staged;
+            if (commitBlobId != null && fileExists && stagedBlobId == null) {
+                if (!wdBlobId.equals(commitBlobId)) {
+                    modifiedFiles.add(filename + " (modified)");
+                    continue;
+                }
+            }
+            // Staged for addition, but with different contents than in the working directory;
+            if (stagedBlobId != null && fileExists) {
+                if (!wdBlobId.equals(stagedBlobId)) {
+                    modifiedFiles.add(filename + " (modified)");
+                    continue;
+                }
+            }
+            // Staged for addition, but deleted in the working directory;
+            if (stagedBlobId != null && !stagedBlobId.startsWith("-") && !fileExists) {
+                modifiedFiles.add(filename + " (deleted)");
+                continue;
+            }
+            // Not staged for removal, but tracked in the current commit and deleted from the working directory.
+            if (!(stagedBlobId != null && stagedBlobId.startsWith("-")) && commitBlobId != null && !fileExists) {
+                modifiedFiles.add(filename + " (deleted)");
+            }
+        }
+        index.save();
+
+        return modifiedFiles;
+    }
+}